@@ -0,0 +1,57 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** The positions and games the benchmarks run over. */
+final class BenchmarkPositions {
+	/** Middlegame positions with plenty of pieces, pins and captures. */
+	static final String[] MIDDLEGAMES = {
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+		"r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QKB1R w KQ - 2 8",
+		"2rq1rk1/pb1nbppp/1p2pn2/2pp4/2PP4/1P2PN2/PB1NBPPP/R2Q1RK1 w - - 0 11",
+		"r1b2rk1/2q1bppp/p2ppn2/1p6/3BPP2/2N2B2/PPPQ2PP/R4R1K b - - 4 13",
+	};
+
+	/** Endgames, including a checkmate and a stalemate so isCheckmate() and isStalemate() see both outcomes. */
+	static final String[] ENDGAMES = {
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 1",
+		"6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+		"8/5pk1/6p1/8/3R4/6P1/5PK1/3r4 b - - 0 40",
+		"rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3",
+		"7k/5Q2/6K1/8/8/8/8/8 b - - 0 1",
+	};
+
+	/** An opening in SAN, played from the starting position by the Board.move() benchmark. */
+	static final String[] GAME = {
+		"e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5", "c3", "Nf6", "d3", "d6", "O-O", "O-O", "Re1",
+		"a6", "Bb3", "Ba7", "h3", "h6", "Nbd2", "Re8", "Nf1", "Be6", "Bxe6", "Rxe6", "Ng3", "Qd7",
+	};
+
+	/** Squares queried by the getAttackers() benchmark. */
+	static final String[] SQUARES = { "E4", "D5", "F7", "C3", "H2", "A8" };
+
+	private BenchmarkPositions() { }
+
+	/** Returns the middlegames followed by the endgames. */
+	static String[] all() {
+		String[] arr = new String[MIDDLEGAMES.length + ENDGAMES.length];
+		System.arraycopy(MIDDLEGAMES, 0, arr, 0, MIDDLEGAMES.length);
+		System.arraycopy(ENDGAMES, 0, arr, MIDDLEGAMES.length, ENDGAMES.length);
+		return arr;
+	}
+}
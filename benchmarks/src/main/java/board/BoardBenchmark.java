@@ -0,0 +1,50 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import board.exception.IllegalMoveException;
+import board.exception.WrongColorToMoveException;
+
+/** Benchmarks of Board.move(), which parses the SAN, validates it and makes the move. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	/** Plays BenchmarkPositions.GAME from the starting position on a new Board. */
+	@Benchmark
+	public Board move() throws IllegalMoveException, WrongColorToMoveException {
+		Board b = new Board();
+		boolean white = true;
+		for(String move : BenchmarkPositions.GAME) {
+			b.move(white, move);
+			white = !white;
+		}
+		return b;
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import board.printer.Style12Printer;
+
+/** Benchmarks of the PositionState paths used on every move. Each invocation runs over all of BenchmarkPositions,
+ * so the scores are per corpus, not per position. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionStateBenchmark {
+	private String[] fens;
+	private PositionState[] positions;
+
+	@Setup
+	public void setup() {
+		fens = BenchmarkPositions.all();
+		positions = new PositionState[fens.length];
+		for(int i=0;i<fens.length;i++) {
+			positions[i] = PositionState.parseFromFen(fens[i]);
+		}
+	}
+
+	@Benchmark
+	public void deepCopy(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.deepCopy());
+		}
+	}
+
+	@Benchmark
+	public void generateLegalMoves(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.generateLegalMoves(ps.isWhitesMove()));
+		}
+	}
+
+	@Benchmark
+	public void getAttackers(Blackhole bh) {
+		for(PositionState ps : positions) {
+			for(String square : BenchmarkPositions.SQUARES) {
+				bh.consume(ps.getAttackers(square));
+			}
+		}
+	}
+
+	@Benchmark
+	public void getFEN(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.getFEN());
+		}
+	}
+
+	@Benchmark
+	public void getGameStatus(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.getGameStatus(ps.isWhitesMove()));
+		}
+	}
+
+	@Benchmark
+	public void isCheckmate(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.isCheckmate(ps.isWhitesMove()));
+		}
+	}
+
+	@Benchmark
+	public void isInCheck(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.isInCheck(true));
+			bh.consume(ps.isInCheck(false));
+		}
+	}
+
+	@Benchmark
+	public void isStalemate(Blackhole bh) {
+		for(PositionState ps : positions) {
+			bh.consume(ps.isStalemate(ps.isWhitesMove()));
+		}
+	}
+
+	@Benchmark
+	public void parseFromFen(Blackhole bh) {
+		for(String fen : fens) {
+			bh.consume(PositionState.parseFromFen(fen));
+		}
+	}
+
+	@Benchmark
+	public void style12Draw(Blackhole bh) {
+		Style12Printer printer = Style12Printer.getSingletonInstance();
+		for(PositionState ps : positions) {
+			bh.consume(printer.draw(ps.getBoard()));
+		}
+	}
+}
@@ -0,0 +1,946 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+import static board.Bitboards.bit;
+import static board.Bitboards.lsb;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A position backed by twelve 64-bit piece bitboards (one per Piece, indexed by <tt>Piece.ordinal()</tt>)
+ * plus occupancy masks for each color.<br />
+ * This is an alternative to the Piece[][] representation of PositionState for the hot paths - attack detection,
+ * check detection and move generation are done with shifts and masks instead of walking String squares.
+ * Use {@link #fromPositionState(PositionState)} and {@link #toPositionState()} to convert between the two. */
+public class BitboardPosition {
+	/* piece types, equal to Piece.ordinal() for white pieces. Add BLACK for black pieces. */
+	static final int KING = 0, QUEEN = 1, ROOK = 2, BISHOP = 3, KNIGHT = 4, PAWN = 5;
+	static final int BLACK = 6;
+	/** Index used in the mailbox for an empty square, equal to Piece.EMPTY.ordinal(). */
+	static final int EMPTY = 12;
+
+	public static final int WHITE_KINGSIDE = 1, WHITE_QUEENSIDE = 2, BLACK_KINGSIDE = 4, BLACK_QUEENSIDE = 8;
+
+	/** the light squares (B1, A2, ...) */
+	private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+
+	/* move generation stages */
+	private static final int GEN_CAPTURES = 1, GEN_QUIETS = 2, GEN_ALL = 3;
+
+	private static final Piece[] PIECES = Piece.values();
+	/** SAN letter of each piece type */
+	private static final char[] PIECE_LETTERS = { 'K', 'Q', 'R', 'B', 'N', 'P' };
+	/** castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to] removes the rights lost by moving a king or rook, or capturing a rook. */
+	private static final int[] CASTLING_MASK = new int[64];
+	static {
+		java.util.Arrays.fill(CASTLING_MASK, 0xF);
+		CASTLING_MASK[0] = ~WHITE_QUEENSIDE & 0xF;
+		CASTLING_MASK[4] = ~(WHITE_KINGSIDE | WHITE_QUEENSIDE) & 0xF;
+		CASTLING_MASK[7] = ~WHITE_KINGSIDE & 0xF;
+		CASTLING_MASK[56] = ~BLACK_QUEENSIDE & 0xF;
+		CASTLING_MASK[60] = ~(BLACK_KINGSIDE | BLACK_QUEENSIDE) & 0xF;
+		CASTLING_MASK[63] = ~BLACK_KINGSIDE & 0xF;
+	}
+	private static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	/** Returns a position with pieces on their starting squares and white to move. */
+	public static BitboardPosition getStartingPosition() {
+		return parseFromFen(STARTING_FEN);
+	}
+
+	/** Builds the bitboards from the Piece[][] board and metadata of <tt>ps</tt>. */
+	public static BitboardPosition fromPositionState(PositionState ps) {
+		BitboardPosition b = new BitboardPosition();
+		Piece[][] board = ps.getBoard();
+		for(int rank=0;rank<8;rank++) {
+			for(int file=0;file<8;file++) {
+				Piece p = board[rank][file];
+				if (p != null && p != Piece.EMPTY) b.addPiece(p.ordinal(), rank*8+file);
+			}
+		}
+		b.whiteToMove = ps.isWhitesMove();
+		b.castlingRights = parseCastlingRights(ps.getCastlingRights());
+		String ep = ps.getEnpassantSquare();
+		b.enPassantSquare = ep == null || ep.equals("-") ? -1 : Bitboards.squareIndex(ep);
+		b.halfMoveClock = ps.getNumHalfMoves();
+		b.fullMoveNumber = Math.max(1,(1+ps.getNumFullMoves())/2);
+		b.zobristKey = b.computeZobristKey();
+		return b;
+	}
+
+	/** Parses a position from FEN. The move counters may be omitted. */
+	public static BitboardPosition parseFromFen(String fen) {
+		BitboardPosition b = new BitboardPosition();
+		String[] arr = fen.trim().split(" +");
+		int rank = 7, file = 0;
+		String placement = arr[0];
+		for(int i=0;i<placement.length();i++) {
+			char c = placement.charAt(i);
+			if (c == '/') {
+				rank--;
+				file = 0;
+			} else if (c >= '1' && c <= '8') {
+				file += c - '0';
+			} else {
+				Piece p = Piece.parsePiece(String.valueOf(c));
+				if (p == null || file > 7 || rank < 0) throw new IllegalArgumentException("Invalid FEN: " + fen);
+				b.addPiece(p.ordinal(), rank*8+file);
+				file++;
+			}
+		}
+		b.whiteToMove = arr.length < 2 || arr[1].equalsIgnoreCase("w");
+		b.castlingRights = arr.length < 3 ? 0 : parseCastlingRights(arr[2]);
+		b.enPassantSquare = arr.length < 4 || arr[3].equals("-") ? -1 : Bitboards.squareIndex(arr[3]);
+		b.halfMoveClock = arr.length < 5 ? 0 : Integer.parseInt(arr[4]);
+		b.fullMoveNumber = arr.length < 6 ? 1 : Integer.parseInt(arr[5]);
+		b.zobristKey = b.computeZobristKey();
+		return b;
+	}
+
+	static int parseCastlingRights(String str) {
+		int rights = 0;
+		if (str == null) return rights;
+		if (str.indexOf('K') >= 0) rights |= WHITE_KINGSIDE;
+		if (str.indexOf('Q') >= 0) rights |= WHITE_QUEENSIDE;
+		if (str.indexOf('k') >= 0) rights |= BLACK_KINGSIDE;
+		if (str.indexOf('q') >= 0) rights |= BLACK_QUEENSIDE;
+		return rights;
+	}
+
+	private final long[] pieces = new long[12];
+	/** occupancy[0] = all white pieces, occupancy[1] = all black pieces */
+	private final long[] occupancy = new long[2];
+	private long occupied;
+	/** Piece ordinal on each square, EMPTY if there is none. Kept in sync with the bitboards for fast lookups. */
+	private final int[] mailbox = new int[64];
+
+	private boolean whiteToMove = true;
+	private int castlingRights;
+	private int enPassantSquare = -1;
+	private int halfMoveClock;
+	private int fullMoveNumber = 1;
+	/** Zobrist key of this position, updated incrementally by doMove(). See Zobrist. */
+	private long zobristKey;
+
+	/** Undo records pushed by doMove(), one long per move:<br />
+	 * bits 0-19 move, 20-23 captured piece, 24-27 castling rights, 28-34 en passant square + 1, 35-50 half move clock */
+	private long[] undoStack = new long[64];
+	/** Zobrist key before each move on the undo stack */
+	private long[] keyStack = new long[64];
+	private int undoCount;
+
+	/** scratch buffer for the String[] move generator, hasLegalMove() and isLegal(), created on first use */
+	private MoveList moveBuffer;
+	/** scratch buffer for toSan() and appendSan(), created on first use */
+	private char[] sanBuffer;
+	/** one move list per ply for perft(), created on first use */
+	private MoveList[] plyMoves;
+
+	/** Creates an empty board. */
+	public BitboardPosition() {
+		java.util.Arrays.fill(mailbox, EMPTY);
+	}
+
+	private void addPiece(int piece,int sq) {
+		long b = bit(sq);
+		pieces[piece] |= b;
+		occupancy[piece < BLACK ? 0 : 1] |= b;
+		occupied |= b;
+		mailbox[sq] = piece;
+		zobristKey ^= Zobrist.piece(piece, sq);
+	}
+
+	private void removePiece(int sq) {
+		int piece = mailbox[sq];
+		long b = bit(sq);
+		pieces[piece] &= ~b;
+		occupancy[piece < BLACK ? 0 : 1] &= ~b;
+		occupied &= ~b;
+		mailbox[sq] = EMPTY;
+		zobristKey ^= Zobrist.piece(piece, sq);
+	}
+
+	private void movePiece(int from,int to) {
+		int piece = mailbox[from];
+		long b = bit(from) | bit(to);
+		pieces[piece] ^= b;
+		occupancy[piece < BLACK ? 0 : 1] ^= b;
+		occupied ^= b;
+		mailbox[from] = EMPTY;
+		mailbox[to] = piece;
+		zobristKey ^= Zobrist.piece(piece, from) ^ Zobrist.piece(piece, to);
+	}
+
+	/** Returns a bitboard of every piece, of either color, attacking <tt>sq</tt> given the occupancy <tt>occ</tt>. */
+	public long attackersTo(int sq,long occ) {
+		return (Bitboards.knightAttacks(sq) & (pieces[KNIGHT] | pieces[BLACK+KNIGHT]))
+			| (Bitboards.kingAttacks(sq) & (pieces[KING] | pieces[BLACK+KING]))
+			| (Bitboards.pawnAttacks(false,sq) & pieces[PAWN])
+			| (Bitboards.pawnAttacks(true,sq) & pieces[BLACK+PAWN])
+			| (Bitboards.bishopAttacks(sq,occ) & (pieces[BISHOP] | pieces[QUEEN] | pieces[BLACK+BISHOP] | pieces[BLACK+QUEEN]))
+			| (Bitboards.rookAttacks(sq,occ) & (pieces[ROOK] | pieces[QUEEN] | pieces[BLACK+ROOK] | pieces[BLACK+QUEEN]));
+	}
+
+	/** Computes the Zobrist key of this position from scratch. getZobristKey() returns the same value, kept up to date incrementally. */
+	public long computeZobristKey() {
+		long key = 0L;
+		for(int sq=0;sq<64;sq++) {
+			key ^= Zobrist.piece(mailbox[sq], sq);
+		}
+		key ^= Zobrist.castling(castlingRights);
+		if (enPassantSquare >= 0) key ^= Zobrist.enPassant(enPassantSquare & 7);
+		if (!whiteToMove) key ^= Zobrist.BLACK_TO_MOVE;
+		return key;
+	}
+
+	/** Returns a copy of this position that shares no state with it. The undo history is not copied. */
+	public BitboardPosition copy() {
+		BitboardPosition b = new BitboardPosition();
+		System.arraycopy(pieces, 0, b.pieces, 0, pieces.length);
+		System.arraycopy(occupancy, 0, b.occupancy, 0, occupancy.length);
+		System.arraycopy(mailbox, 0, b.mailbox, 0, mailbox.length);
+		b.occupied = occupied;
+		b.whiteToMove = whiteToMove;
+		b.castlingRights = castlingRights;
+		b.enPassantSquare = enPassantSquare;
+		b.halfMoveClock = halfMoveClock;
+		b.fullMoveNumber = fullMoveNumber;
+		b.zobristKey = zobristKey;
+		return b;
+	}
+
+	/** Makes <tt>move</tt> (as produced by the move generator or toPackedMove()) in place,
+	 * pushing an undo record so that undoMove() can take it back. No legality checking is done. */
+	public void doMove(int move) {
+		int from = PackedMove.from(move), to = PackedMove.to(move);
+		int piece = mailbox[from];
+		boolean white = piece < BLACK;
+		int capturedSquare = PackedMove.isEnPassant(move) ? (white ? to-8 : to+8) : to;
+		int captured = mailbox[capturedSquare];
+
+		if (undoCount == undoStack.length) {
+			long[] arr = new long[undoStack.length*2];
+			System.arraycopy(undoStack, 0, arr, 0, undoCount);
+			undoStack = arr;
+			long[] keys = new long[keyStack.length*2];
+			System.arraycopy(keyStack, 0, keys, 0, undoCount);
+			keyStack = keys;
+		}
+		keyStack[undoCount] = zobristKey;
+		undoStack[undoCount++] = (move & 0xFFFFFL) | ((long)captured << 20) | ((long)castlingRights << 24)
+			| ((long)(enPassantSquare+1) << 28) | ((long)halfMoveClock << 35);
+
+		if (captured != EMPTY) removePiece(capturedSquare);
+		movePiece(from, to);
+		int promotion = PackedMove.promotion(move);
+		if (promotion != 0) {
+			removePiece(to);
+			addPiece(white ? promotion : BLACK+promotion, to);
+		}
+		if (PackedMove.isCastle(move)) {
+			if (to > from) {
+				movePiece(from+3, from+1);
+			} else {
+				movePiece(from-4, from-1);
+			}
+		}
+
+		zobristKey ^= Zobrist.castling(castlingRights) ^ Zobrist.enPassant(enPassantSquare < 0 ? -1 : enPassantSquare & 7);
+		castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to];
+		enPassantSquare = PackedMove.isDoublePush(move) ? (from+to) >>> 1 : -1;
+		zobristKey ^= Zobrist.castling(castlingRights) ^ Zobrist.enPassant(enPassantSquare < 0 ? -1 : enPassantSquare & 7) ^ Zobrist.BLACK_TO_MOVE;
+		halfMoveClock = (piece == PAWN || piece == BLACK+PAWN || captured != EMPTY) ? 0 : halfMoveClock+1;
+		if (!whiteToMove) fullMoveNumber++;
+		whiteToMove = !whiteToMove;
+	}
+
+	/** Takes back the last move made by doMove(). */
+	public void undoMove() {
+		if (undoCount == 0) throw new IllegalStateException("No move to undo.");
+		long record = undoStack[--undoCount];
+		int move = (int)(record & 0xFFFFF);
+		int captured = (int)((record >>> 20) & 0xF);
+		int from = PackedMove.from(move), to = PackedMove.to(move);
+
+		whiteToMove = !whiteToMove;
+		if (!whiteToMove) fullMoveNumber--;
+		castlingRights = (int)((record >>> 24) & 0xF);
+		enPassantSquare = (int)((record >>> 28) & 0x7F) - 1;
+		halfMoveClock = (int)((record >>> 35) & 0xFFFF);
+
+		if (PackedMove.isCastle(move)) {
+			if (to > from) {
+				movePiece(from+1, from+3);
+			} else {
+				movePiece(from-1, from-4);
+			}
+		}
+		if (PackedMove.promotion(move) != 0) {
+			removePiece(to);
+			addPiece(whiteToMove ? PAWN : BLACK+PAWN, to);
+		}
+		movePiece(to, from);
+		if (captured != EMPTY) {
+			addPiece(captured, PackedMove.isEnPassant(move) ? (whiteToMove ? to-8 : to+8) : to);
+		}
+		zobristKey = keyStack[undoCount];
+	}
+
+	/** Returns the number of moves made with doMove() that can still be taken back. */
+	public int getUndoCount() {
+		return undoCount;
+	}
+
+	/** Adds a pawn move (and its promotions, if it reaches the last rank) to <tt>moves</tt>. */
+	private void addPawnMove(MoveList moves,int from,int to,int flags) {
+		int rank = Bitboards.rankOf(to);
+		if (rank == 7 || rank == 0) {
+			moves.add(PackedMove.encode(from,to,QUEEN,flags));
+			moves.add(PackedMove.encode(from,to,ROOK,flags));
+			moves.add(PackedMove.encode(from,to,BISHOP,flags));
+			moves.add(PackedMove.encode(from,to,KNIGHT,flags));
+		} else {
+			moves.add(PackedMove.encode(from,to,0,flags));
+		}
+	}
+
+	/** Adds a move for every square in <tt>targets</tt>, flagging the ones that capture. */
+	private void addMoves(MoveList moves,int from,long targets) {
+		while(targets != 0) {
+			int to = lsb(targets);
+			targets &= targets-1;
+			moves.add(PackedMove.encode(from,to,0,mailbox[to] == EMPTY ? 0 : PackedMove.CAPTURE));
+		}
+	}
+
+	/** Adds the castling moves that are legal for <tt>white</tt>. */
+	private void generateCastling(boolean white,MoveList moves) {
+		int base = white ? 0 : 56; // E1 - 4 or E8 - 4
+		int king = white ? KING : BLACK+KING;
+		int rook = white ? ROOK : BLACK+ROOK;
+		int kingside = white ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+		int queenside = white ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+		if ((castlingRights & (kingside | queenside)) == 0 || mailbox[base+4] != king) return;
+		if (isSquareAttacked(base+4, !white, occupied)) return;
+
+		if ((castlingRights & kingside) != 0 && mailbox[base+7] == rook
+				&& (occupied & (bit(base+5) | bit(base+6))) == 0
+				&& !isSquareAttacked(base+5, !white, occupied) && !isSquareAttacked(base+6, !white, occupied)) {
+			moves.add(PackedMove.encode(base+4,base+6,0,PackedMove.CASTLE));
+		}
+		if ((castlingRights & queenside) != 0 && mailbox[base] == rook
+				&& (occupied & (bit(base+1) | bit(base+2) | bit(base+3))) == 0
+				&& !isSquareAttacked(base+3, !white, occupied) && !isSquareAttacked(base+2, !white, occupied)) {
+			moves.add(PackedMove.encode(base+4,base+2,0,PackedMove.CASTLE));
+		}
+	}
+
+	/** Clears <tt>moves</tt> and fills it with the legal moves of the side to move. */
+	public void generateLegalMoves(MoveList moves) {
+		generateLegalMoves(whiteToMove, moves);
+	}
+
+	/** Clears <tt>moves</tt> and fills it with the legal moves of <tt>white</tt>.
+	 * En passant captures are only generated for the side to move. */
+	public void generateLegalMoves(boolean white,MoveList moves) {
+		generateMoves(white, moves, GEN_ALL);
+	}
+
+	/** Clears <tt>moves</tt> and fills it with the legal captures (en passant included) and promotions of the side to move.
+	 * Together with generateQuiets() this gives the same moves as generateLegalMoves(), in two stages. */
+	public void generateCaptures(MoveList moves) {
+		generateMoves(whiteToMove, moves, GEN_CAPTURES);
+	}
+
+	/** Clears <tt>moves</tt> and fills it with the legal moves of the side to move that are neither captures nor promotions. */
+	public void generateQuiets(MoveList moves) {
+		generateMoves(whiteToMove, moves, GEN_QUIETS);
+	}
+
+	/** Clears <tt>moves</tt> and fills it with the legal moves of <tt>white</tt>.<br />
+	 * The pieces giving check and the pinned pieces are found once, up front. A piece other than the king may then only
+	 * move to a square that captures or blocks the single checker (nowhere in double check), and a pinned piece only
+	 * along the line of its pin, so every move emitted is legal without being tried. King moves are checked against
+	 * the attacks of the other side with the king taken off the board. En passant, which can uncover a check along the rank
+	 * through two pawns, is the one move still checked on its own.
+	 * @param stage GEN_CAPTURES for captures and promotions, GEN_QUIETS for the rest, GEN_ALL for both */
+	private void generateMoves(boolean white,MoveList moves,int stage) {
+		moves.clear();
+		int us = white ? 0 : BLACK;
+		long enemy = occupancy[white?1:0];
+		long empty = ~occupied;
+		boolean captures = (stage & GEN_CAPTURES) != 0;
+		boolean quiets = (stage & GEN_QUIETS) != 0;
+		long targetMask = (captures ? enemy : 0) | (quiets ? empty : 0);
+
+		long kingBit = pieces[us+KING];
+		int kingSq = kingBit == 0 ? -1 : lsb(kingBit);
+		long checkMask = -1L;
+		long pinned = 0L;
+		if (kingSq >= 0) {
+			long checkers = attackersTo(kingSq, occupied) & enemy;
+			if (checkers != 0) {
+				checkMask = (checkers & (checkers-1)) != 0 ? 0L : checkers | Bitboards.between(kingSq, lsb(checkers));
+			}
+			pinned = pinnedPieces(white, kingSq);
+		}
+
+		if (checkMask != 0) {
+			// pawns
+			long bb = pieces[us+PAWN];
+			int forward = white ? 8 : -8;
+			long doublePushRank = white ? Bitboards.RANK_2 : Bitboards.RANK_7;
+			long lastRank = white ? Bitboards.RANK_8 : Bitboards.RANK_1;
+			while(bb != 0) {
+				int from = lsb(bb);
+				bb &= bb-1;
+				long allowed = checkMask & ((pinned & bit(from)) != 0 ? Bitboards.line(kingSq, from) : -1L);
+				int to = from+forward;
+				if ((empty & bit(to)) != 0) {
+					// a push to the last rank is a promotion, generated with the captures
+					if (((bit(to) & lastRank) != 0 ? captures : quiets) && (allowed & bit(to)) != 0) addPawnMove(moves,from,to,0);
+					if (quiets && (bit(from) & doublePushRank) != 0 && (empty & allowed & bit(to+forward)) != 0) {
+						moves.add(PackedMove.encode(from,to+forward,0,PackedMove.DOUBLE_PUSH));
+					}
+				}
+				if (!captures) continue;
+				long targets = Bitboards.pawnAttacks(white,from) & enemy & allowed;
+				while(targets != 0) {
+					addPawnMove(moves,from,lsb(targets),PackedMove.CAPTURE);
+					targets &= targets-1;
+				}
+				if (enPassantSquare >= 0 && white == whiteToMove && (Bitboards.pawnAttacks(white,from) & bit(enPassantSquare)) != 0) {
+					int move = PackedMove.encode(from,enPassantSquare,0,PackedMove.CAPTURE | PackedMove.EN_PASSANT);
+					if (!leavesKingInCheck(white,move)) moves.add(move);
+				}
+			}
+
+			// pieces; a pinned knight can never move along its pin
+			for(int type=QUEEN;type<=KNIGHT;type++) {
+				bb = pieces[us+type];
+				if (type == KNIGHT) bb &= ~pinned;
+				while(bb != 0) {
+					int from = lsb(bb);
+					bb &= bb-1;
+					long targets = pieceAttacks(type,from) & targetMask & checkMask;
+					if ((pinned & bit(from)) != 0) targets &= Bitboards.line(kingSq, from);
+					addMoves(moves,from,targets);
+				}
+			}
+		}
+
+		// king
+		if (kingSq >= 0) {
+			long targets = Bitboards.kingAttacks(kingSq) & targetMask;
+			long occ = occupied & ~kingBit;
+			while(targets != 0) {
+				int to = lsb(targets);
+				targets &= targets-1;
+				if (!isSquareAttacked(to, !white, occ)) moves.add(PackedMove.encode(kingSq,to,0,mailbox[to] == EMPTY ? 0 : PackedMove.CAPTURE));
+			}
+			if (quiets && checkMask == -1L) generateCastling(white,moves);
+		}
+	}
+
+	/** Returns the pieces of <tt>white</tt> pinned to its king on <tt>kingSq</tt>. */
+	private long pinnedPieces(boolean white,int kingSq) {
+		int them = white ? BLACK : 0;
+		long pinned = 0L;
+		long snipers = (Bitboards.rookAttacks(kingSq, 0L) & (pieces[them+ROOK] | pieces[them+QUEEN]))
+			| (Bitboards.bishopAttacks(kingSq, 0L) & (pieces[them+BISHOP] | pieces[them+QUEEN]));
+		while(snipers != 0) {
+			long blockers = Bitboards.between(kingSq, lsb(snipers)) & occupied;
+			if (blockers != 0 && (blockers & (blockers-1)) == 0) pinned |= blockers & occupancy[white?0:1];
+			snipers &= snipers-1;
+		}
+		return pinned;
+	}
+
+	/** Returns the squares attacked by a queen, rook, bishop or knight (by type) standing on <tt>from</tt>. */
+	private long pieceAttacks(int type,int from) {
+		switch(type) {
+			case QUEEN: return Bitboards.queenAttacks(from,occupied);
+			case ROOK: return Bitboards.rookAttacks(from,occupied);
+			case BISHOP: return Bitboards.bishopAttacks(from,occupied);
+			default: return Bitboards.knightAttacks(from);
+		}
+	}
+
+	/** Gets legal moves for the given side (true = white, false = black),
+	 * in the same lower case coordinate format as PositionState (eg "e2e4").
+	 * Promotions have the promotion piece appended (eg "e7e8q").<br />
+	 * Prefer generateLegalMoves(MoveList), which does not allocate. */
+	public String[] generateLegalMoves(boolean white) {
+		if (moveBuffer == null) moveBuffer = new MoveList();
+		generateLegalMoves(white,moveBuffer);
+		String[] arr = new String[moveBuffer.size()];
+		for(int i=0;i<arr.length;i++) {
+			arr[i] = PackedMove.toUci(moveBuffer.get(i));
+		}
+		return arr;
+	}
+
+	/** Returns all squares that are attacking this square, REGARDLESS OF COLOR.
+	 * Like PositionState.getAttackers(), the piece on the square itself is excluded. */
+	public String[] getAttackers(String square) {
+		int sq = Bitboards.squareIndex(square);
+		long attackers = attackersTo(sq,occupied) & ~bit(sq);
+		String[] arr = new String[Bitboards.popCount(attackers)];
+		int n = 0;
+		for(int p=0;p<pieces.length && n < arr.length;p++) {
+			long bb = pieces[p] & attackers;
+			while(bb != 0) {
+				arr[n++] = Bitboards.squareName(lsb(bb));
+				bb &= bb-1;
+			}
+		}
+		return arr;
+	}
+
+	/** Returns the bitboard of the given piece. */
+	public long getBitboard(Piece p) {
+		return p == Piece.EMPTY ? ~occupied : pieces[p.ordinal()];
+	}
+
+	/** Castling rights as a combination of WHITE_KINGSIDE, WHITE_QUEENSIDE, BLACK_KINGSIDE and BLACK_QUEENSIDE. */
+	public int getCastlingRights() {
+		return castlingRights;
+	}
+
+	/** Returns the 0-63 index of the en passant target square, or -1 if there is none. */
+	public int getEnPassantSquare() {
+		return enPassantSquare;
+	}
+
+	public String getFEN() {
+		StringBuilder b = new StringBuilder(90);
+		for(int rank=7;rank>=0;rank--) {
+			int numEmpty = 0;
+			for(int file=0;file<8;file++) {
+				int p = mailbox[rank*8+file];
+				if (p == EMPTY) { numEmpty++; continue; }
+				if (numEmpty != 0) {
+					b.append(numEmpty);
+					numEmpty = 0;
+				}
+				b.append(PIECES[p].getAbbreviation());
+			}
+			if (numEmpty != 0) b.append(numEmpty);
+			if (rank != 0) b.append('/');
+		}
+
+		b.append(whiteToMove ? " w " : " b ");
+		if (castlingRights == 0) b.append('-');
+		if ((castlingRights & WHITE_KINGSIDE) != 0) b.append('K');
+		if ((castlingRights & WHITE_QUEENSIDE) != 0) b.append('Q');
+		if ((castlingRights & BLACK_KINGSIDE) != 0) b.append('k');
+		if ((castlingRights & BLACK_QUEENSIDE) != 0) b.append('q');
+		b.append(' ');
+		if (enPassantSquare < 0) {
+			b.append('-');
+		} else {
+			b.append((char)('a'+Bitboards.fileOf(enPassantSquare))).append((char)('1'+Bitboards.rankOf(enPassantSquare)));
+		}
+		b.append(' ').append(halfMoveClock);
+		b.append(' ').append(fullMoveNumber);
+		return b.toString();
+	}
+
+	public int getFullMoveNumber() {
+		return fullMoveNumber;
+	}
+
+	/** Returns the status of the game with <tt>white</tt> to move: checkmate or stalemate if that side has no legal move,
+	 * otherwise a draw by insufficient material or the seventy-five or fifty move rule, otherwise ONGOING.
+	 * Repetitions are not detected, since they depend on the positions before this one. */
+	public GameStatus getGameStatus(boolean white) {
+		if (!hasLegalMove(white)) return isInCheck(white) ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+		if (isInsufficientMaterial()) return GameStatus.INSUFFICIENT_MATERIAL;
+		if (halfMoveClock >= 150) return GameStatus.SEVENTY_FIVE_MOVE_RULE;
+		if (halfMoveClock >= 100) return GameStatus.FIFTY_MOVE_RULE;
+		return GameStatus.ONGOING;
+	}
+
+	public int getHalfMoveClock() {
+		return halfMoveClock;
+	}
+
+	/** Returns the bitboard of all pieces of the given color. */
+	public long getOccupancy(boolean white) {
+		return occupancy[white?0:1];
+	}
+
+	/** Returns the bitboard of all pieces of both colors. */
+	public long getOccupied() {
+		return occupied;
+	}
+
+	/** Returns the piece on the given 0-63 square. */
+	public Piece getPiece(int sq) {
+		return PIECES[mailbox[sq]];
+	}
+
+	/** Returns the piece on the specified square */
+	public Piece getPiece(String square) {
+		return getPiece(Bitboards.squareIndex(square));
+	}
+
+	/** Returns the Zobrist key of this position (pieces, side to move, castling rights and en passant file).
+	 * It is equal to PositionState.getZobristKey() for the same position. */
+	public long getZobristKey() {
+		return zobristKey;
+	}
+
+	/** Returns if <tt>white</tt> has any legal move.<br />
+	 * It stops at the first one found instead of generating them all, with the same check and pin masks as
+	 * generateLegalMoves(). King steps are tried first, as they are the cheapest to find and mostly there.
+	 * Castling is never needed: when it is legal, so is the king's step towards the rook. */
+	public boolean hasLegalMove(boolean white) {
+		int us = white ? 0 : BLACK;
+		long own = occupancy[white?0:1];
+		long enemy = occupancy[white?1:0];
+		long kingBit = pieces[us+KING];
+		int kingSq = kingBit == 0 ? -1 : lsb(kingBit);
+		long checkMask = -1L;
+		long pinned = 0L;
+		if (kingSq >= 0) {
+			long targets = Bitboards.kingAttacks(kingSq) & ~own;
+			long occ = occupied & ~kingBit;
+			while(targets != 0) {
+				if (!isSquareAttacked(lsb(targets), !white, occ)) return true;
+				targets &= targets-1;
+			}
+			long checkers = attackersTo(kingSq, occupied) & enemy;
+			if (checkers != 0) {
+				// in double check only the king can move
+				if ((checkers & (checkers-1)) != 0) return false;
+				checkMask = checkers | Bitboards.between(kingSq, lsb(checkers));
+			}
+			pinned = pinnedPieces(white, kingSq);
+		}
+
+		for(int type=QUEEN;type<=KNIGHT;type++) {
+			long bb = pieces[us+type];
+			if (type == KNIGHT) bb &= ~pinned;
+			while(bb != 0) {
+				int from = lsb(bb);
+				bb &= bb-1;
+				long targets = pieceAttacks(type,from) & ~own & checkMask;
+				if ((pinned & bit(from)) != 0) targets &= Bitboards.line(kingSq, from);
+				if (targets != 0) return true;
+			}
+		}
+
+		long bb = pieces[us+PAWN];
+		long empty = ~occupied;
+		int forward = white ? 8 : -8;
+		long doublePushRank = white ? Bitboards.RANK_2 : Bitboards.RANK_7;
+		while(bb != 0) {
+			int from = lsb(bb);
+			bb &= bb-1;
+			long allowed = checkMask & ((pinned & bit(from)) != 0 ? Bitboards.line(kingSq, from) : -1L);
+			int to = from+forward;
+			if ((empty & bit(to)) != 0) {
+				if ((allowed & bit(to)) != 0) return true;
+				if ((bit(from) & doublePushRank) != 0 && (empty & allowed & bit(to+forward)) != 0) return true;
+			}
+			if ((Bitboards.pawnAttacks(white,from) & enemy & allowed) != 0) return true;
+			if (enPassantSquare >= 0 && white == whiteToMove && (Bitboards.pawnAttacks(white,from) & bit(enPassantSquare)) != 0 &&
+					!leavesKingInCheck(white, PackedMove.encode(from,enPassantSquare,0,PackedMove.CAPTURE | PackedMove.EN_PASSANT))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns if neither side can possibly mate: only kings are left, or one knight or bishop besides them,
+	 * or any number of bishops all standing on squares of one color. */
+	public boolean isInsufficientMaterial() {
+		if ((pieces[PAWN] | pieces[BLACK+PAWN] | pieces[ROOK] | pieces[BLACK+ROOK] | pieces[QUEEN] | pieces[BLACK+QUEEN]) != 0) return false;
+		long knights = pieces[KNIGHT] | pieces[BLACK+KNIGHT];
+		long bishops = pieces[BISHOP] | pieces[BLACK+BISHOP];
+		int minors = Bitboards.popCount(knights | bishops);
+		if (minors <= 1) return true;
+		return knights == 0 && ((bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0);
+	}
+
+	/** Returns if the given side is in check.
+	 * @param white true for white, false for black. */
+	public boolean isInCheck(boolean white) {
+		long king = pieces[white ? KING : BLACK+KING];
+		if (king == 0) return false;
+		return isSquareAttacked(lsb(king), !white, occupied);
+	}
+
+	/** Returns if <tt>move</tt> is a legal move of the side to move in this position, with the flags
+	 * toPackedMove() would give it. Used to check a move from elsewhere (eg a transposition table) before making it,
+	 * without generating every move. */
+	public boolean isLegal(int move) {
+		int from = PackedMove.from(move), to = PackedMove.to(move);
+		int piece = mailbox[from];
+		if (piece == EMPTY || (piece < BLACK) != whiteToMove || from == to) return false;
+		int promotion = PackedMove.promotion(move);
+		if (promotion > KNIGHT || move != toPackedMove(from, to, promotion)) return false;
+		long toBit = bit(to);
+		if ((occupancy[whiteToMove?0:1] & toBit) != 0) return false;
+
+		int type = piece < BLACK ? piece : piece-BLACK;
+		if (type == PAWN) {
+			int rank = Bitboards.rankOf(to);
+			if ((rank == 0 || rank == 7) != (promotion != 0)) return false;
+			int forward = whiteToMove ? 8 : -8;
+			if (PackedMove.isCapture(move)) {
+				if ((Bitboards.pawnAttacks(whiteToMove, from) & toBit) == 0) return false;
+			} else if (PackedMove.isDoublePush(move)) {
+				long startRank = whiteToMove ? Bitboards.RANK_2 : Bitboards.RANK_7;
+				if ((bit(from) & startRank) == 0 || to != from+2*forward || (occupied & bit(from+forward)) != 0) return false;
+			} else if (to != from+forward) {
+				return false;
+			}
+		} else {
+			if (promotion != 0) return false;
+			if (PackedMove.isCastle(move)) {
+				if (moveBuffer == null) moveBuffer = new MoveList();
+				moveBuffer.clear();
+				generateCastling(whiteToMove, moveBuffer);
+				return moveBuffer.contains(move);
+			}
+			long attacks = type == KING ? Bitboards.kingAttacks(from) : pieceAttacks(type, from);
+			if ((attacks & toBit) == 0) return false;
+		}
+		return !leavesKingInCheck(whiteToMove, move);
+	}
+
+	/** Returns if <tt>sq</tt> is attacked by any piece of color <tt>byWhite</tt>, given the occupancy <tt>occ</tt>. */
+	public boolean isSquareAttacked(int sq,boolean byWhite,long occ) {
+		return isSquareAttacked(sq, byWhite, occ, -1L);
+	}
+
+	/** Same as isSquareAttacked(sq,byWhite,occ) but only attackers inside <tt>mask</tt> are considered (except the king).
+	 * This lets a captured piece be ignored without modifying the position. */
+	private boolean isSquareAttacked(int sq,boolean byWhite,long occ,long mask) {
+		int them = byWhite ? 0 : BLACK;
+		if ((Bitboards.knightAttacks(sq) & pieces[them+KNIGHT] & mask) != 0) return true;
+		if ((Bitboards.pawnAttacks(!byWhite,sq) & pieces[them+PAWN] & mask) != 0) return true;
+		if ((Bitboards.kingAttacks(sq) & pieces[them+KING]) != 0) return true;
+		long diagonal = (pieces[them+BISHOP] | pieces[them+QUEEN]) & mask;
+		if (diagonal != 0 && (Bitboards.bishopAttacks(sq,occ) & diagonal) != 0) return true;
+		long straight = (pieces[them+ROOK] | pieces[them+QUEEN]) & mask;
+		if (straight != 0 && (Bitboards.rookAttacks(sq,occ) & straight) != 0) return true;
+		return false;
+	}
+
+	public boolean isWhitesMove() {
+		return whiteToMove;
+	}
+
+	/** Returns if making the (pseudo-legal) <tt>move</tt> would leave the king of <tt>white</tt> attacked.
+	 * The resulting position is never built: the occupancy is updated with a few XORs and the captured piece is masked out. */
+	private boolean leavesKingInCheck(boolean white,int move) {
+		int from = PackedMove.from(move), to = PackedMove.to(move);
+		int us = white ? 0 : BLACK;
+		long fromBit = bit(from), toBit = bit(to);
+
+		long captured = 0L;
+		if (PackedMove.isEnPassant(move)) {
+			captured = bit(white ? to-8 : to+8);
+		} else if (PackedMove.isCapture(move)) {
+			captured = toBit;
+		}
+		long occ = (occupied & ~fromBit & ~captured) | toBit;
+		int king = mailbox[from] == us+KING ? to : lsb(pieces[us+KING]);
+		if (pieces[us+KING] == 0) return false;
+		return isSquareAttacked(king, !white, occ, ~captured);
+	}
+
+	/** Counts the leaf nodes of the legal move tree <tt>depth</tt> plies deep from this position, for the side to move.
+	 * Used to verify the move generator against known counts and to measure its speed.
+	 * @see http://chessprogramming.wikispaces.com/Perft */
+	public long perft(int depth) {
+		if (depth <= 0) return 1;
+		return perft(depth, 0);
+	}
+
+	private long perft(int depth,int ply) {
+		MoveList moves = getPlyMoves(ply);
+		generateLegalMoves(moves);
+		if (depth == 1) return moves.size();
+		long nodes = 0;
+		for(int i=0;i<moves.size();i++) {
+			doMove(moves.get(i));
+			nodes += perft(depth-1, ply+1);
+			undoMove();
+		}
+		return nodes;
+	}
+
+	/** Same as perft(int) but looks up and stores subtree counts in <tt>table</tt>, so transposed subtrees are only walked once.
+	 * The table may be shared with other threads. */
+	public long perft(int depth,PerftHashTable table) {
+		if (depth <= 0) return 1;
+		return perft(depth, 0, table);
+	}
+
+	private long perft(int depth,int ply,PerftHashTable table) {
+		if (depth > 1) {
+			long nodes = table.probe(zobristKey, depth);
+			if (nodes >= 0) return nodes;
+		}
+		MoveList moves = getPlyMoves(ply);
+		generateLegalMoves(moves);
+		if (depth == 1) return moves.size();
+		long nodes = 0;
+		for(int i=0;i<moves.size();i++) {
+			doMove(moves.get(i));
+			nodes += perft(depth-1, ply+1, table);
+			undoMove();
+		}
+		table.store(zobristKey, depth, nodes);
+		return nodes;
+	}
+
+	/** Returns perft(depth-1) after each legal root move, keyed by the move in UCI form and in generation order.
+	 * Comparing this against another engine's output narrows a perft mismatch down to a single move. */
+	public Map<String,Long> divide(int depth) {
+		Map<String,Long> map = new LinkedHashMap<String,Long>();
+		if (depth <= 0) return map;
+		MoveList moves = new MoveList();
+		generateLegalMoves(moves);
+		for(int i=0;i<moves.size();i++) {
+			doMove(moves.get(i));
+			map.put(PackedMove.toUci(moves.get(i)), depth == 1 ? 1L : perft(depth-1, 0));
+			undoMove();
+		}
+		return map;
+	}
+
+	private MoveList getPlyMoves(int ply) {
+		if (plyMoves == null || ply >= plyMoves.length) {
+			MoveList[] arr = new MoveList[ply+16];
+			if (plyMoves != null) System.arraycopy(plyMoves, 0, arr, 0, plyMoves.length);
+			plyMoves = arr;
+		}
+		if (plyMoves[ply] == null) plyMoves[ply] = new MoveList();
+		return plyMoves[ply];
+	}
+
+	/** Sets the side to move. An en passant square that the new side to move could not capture on is cleared. */
+	public void setWhiteToMove(boolean white) {
+		if (white != whiteToMove) {
+			whiteToMove = white;
+			zobristKey ^= Zobrist.BLACK_TO_MOVE;
+		}
+		if (enPassantSquare >= 0 && Bitboards.rankOf(enPassantSquare) != (white ? 5 : 2)) {
+			zobristKey ^= Zobrist.enPassant(enPassantSquare & 7);
+			enPassantSquare = -1;
+		}
+	}
+
+	/** Builds the packed move from <tt>from</tt> to <tt>to</tt> for the piece standing on <tt>from</tt>,
+	 * filling in the capture, en passant, castle and double push flags from the position.
+	 * The move is not checked for legality.
+	 * @param promotion the promotion piece type (see PackedMove), 0 for none */
+	public int toPackedMove(int from,int to,int promotion) {
+		int piece = mailbox[from];
+		int flags = mailbox[to] != EMPTY ? PackedMove.CAPTURE : 0;
+		if (piece == PAWN || piece == BLACK+PAWN) {
+			int distance = Math.abs(to-from);
+			if (distance == 16) {
+				flags |= PackedMove.DOUBLE_PUSH;
+			} else if (to == enPassantSquare && (distance == 7 || distance == 9)) {
+				flags |= PackedMove.CAPTURE | PackedMove.EN_PASSANT;
+			}
+		} else if ((piece == KING || piece == BLACK+KING) && Math.abs(to-from) == 2) {
+			flags |= PackedMove.CASTLE;
+		}
+		return PackedMove.encode(from, to, promotion, flags);
+	}
+
+	/** Converts this position into a PositionState. */
+	public PositionState toPositionState() {
+		return PositionState.parseFromFen(getFEN());
+	}
+
+	/** Returns <tt>move</tt>, a legal move of the side to move, in standard algebraic notation (eg "Nbd7", "exd8=Q+", "O-O#"):
+	 * the file, the rank or the square it moves from is added only if another piece of the same type could legally go
+	 * to the same square, and "+" or "#" if the move gives check or mate.
+	 * @see #appendSan(int, Appendable) */
+	public String toSan(int move) {
+		int length = writeSan(move);
+		return new String(sanBuffer, 0, length);
+	}
+	
+	/** Appends <tt>move</tt>, a legal move of the side to move, to <tt>out</tt> in standard algebraic notation,
+	 * without creating any objects. See toSan(). */
+	public void appendSan(int move,Appendable out) throws IOException {
+		int length = writeSan(move);
+		for(int i=0;i<length;i++) out.append(sanBuffer[i]);
+	}
+	
+	/** Writes the SAN of <tt>move</tt> into sanBuffer and returns its length. */
+	private int writeSan(int move) {
+		if (sanBuffer == null) sanBuffer = new char[8];
+		char[] b = sanBuffer;
+		int n = 0;
+		int from = PackedMove.from(move), to = PackedMove.to(move);
+		if (PackedMove.isCastle(move)) {
+			b[n++] = 'O';
+			b[n++] = '-';
+			b[n++] = 'O';
+			if ((to & 7) == 2) {
+				b[n++] = '-';
+				b[n++] = 'O';
+			}
+		} else {
+			int type = mailbox[from] % BLACK;
+			if (type == PAWN) {
+				if (PackedMove.isCapture(move)) b[n++] = (char)('a' + (from & 7));
+			} else {
+				b[n++] = PIECE_LETTERS[type];
+				// the other pieces of the same type that could legally go to the same square
+				long others = attackersTo(to, occupied) & pieces[mailbox[from]] & ~bit(from);
+				boolean ambiguous = false, sameFile = false, sameRank = false;
+				for(;others != 0;others &= others-1) {
+					int other = lsb(others);
+					if (!isLegal(toPackedMove(other, to, 0))) continue;
+					ambiguous = true;
+					sameFile |= (other & 7) == (from & 7);
+					sameRank |= (other >>> 3) == (from >>> 3);
+				}
+				if (ambiguous && (!sameFile || sameRank)) b[n++] = (char)('a' + (from & 7));
+				if (sameFile) b[n++] = (char)('1' + (from >>> 3));
+			}
+			if (PackedMove.isCapture(move)) b[n++] = 'x';
+			b[n++] = (char)('a' + (to & 7));
+			b[n++] = (char)('1' + (to >>> 3));
+			if (PackedMove.isPromotion(move)) {
+				b[n++] = '=';
+				b[n++] = PIECE_LETTERS[PackedMove.promotion(move)];
+			}
+		}
+		doMove(move);
+		if (isInCheck(whiteToMove)) b[n++] = hasLegalMove(whiteToMove) ? '+' : '#';
+		undoMove();
+		return n;
+	}
+	
+	@Override
+	public String toString() {
+		return getFEN();
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** Static helpers and precomputed attack tables for 64-bit bitboards.<br />
+ * Squares are numbered 0-63 with A1 = 0, B1 = 1, ... H8 = 63 (little-endian rank-file mapping),
+ * so bit <tt>n</tt> of a bitboard represents square <tt>n</tt>.<br />
+ * Bishop and rook attacks are looked up in "fancy" magic bitboard tables which are built once when this class is loaded.
+ * @see http://chessprogramming.wikispaces.com/Bitboards
+ * @see http://chessprogramming.wikispaces.com/Magic+Bitboards */
+public final class Bitboards {
+	public static final long FILE_A = 0x0101010101010101L;
+	public static final long FILE_H = FILE_A << 7;
+	public static final long RANK_1 = 0xFFL;
+	public static final long RANK_2 = RANK_1 << 8;
+	public static final long RANK_4 = RANK_1 << 24;
+	public static final long RANK_5 = RANK_1 << 32;
+	public static final long RANK_7 = RANK_1 << 48;
+	public static final long RANK_8 = RANK_1 << 56;
+
+	private static final String[] SQUARE_NAMES = new String[64];
+	private static final long[] KNIGHT_ATTACKS = new long[64];
+	private static final long[] KING_ATTACKS = new long[64];
+	/** PAWN_ATTACKS[0] holds white pawn attacks, PAWN_ATTACKS[1] black pawn attacks. */
+	private static final long[][] PAWN_ATTACKS = new long[2][64];
+	/** BETWEEN[a][b] holds the squares strictly between two squares on a common rank, file or diagonal, 0 otherwise. */
+	private static final long[][] BETWEEN = new long[64][64];
+	/** LINE[a][b] holds the whole rank, file or diagonal through two squares (edge to edge), 0 if they share none. */
+	private static final long[][] LINE = new long[64][64];
+
+	/* magic bitboards: attacks = TABLE[OFFSETS[sq] + (((occupied & MASKS[sq]) * MAGICS[sq]) >>> SHIFTS[sq])] */
+	private static final long[] BISHOP_MASKS = new long[64];
+	/** Multipliers found offline by a random search for sparse numbers that map every relevant occupancy
+	 * of a square to an index without destructive collisions. */
+	private static final long[] BISHOP_MAGICS = {
+		0x0088020408042300L, 0x01280101021A0802L, 0x007204304200C420L, 0x401440408800D010L,
+		0x008510C041100004L, 0x0041112010000002L, 0x0001049804400140L, 0x0009011082200200L,
+		0x8202410802408208L, 0x00802004D0838900L, 0x0014100430404000L, 0x0000082280200060L,
+		0x0500041045010103L, 0x0800061110081000L, 0x9000004202206040L, 0x0480410048040421L,
+		0x0040000888211400L, 0x10420120C2042100L, 0x0001081001020010L, 0x201204A420220100L,
+		0x0902220400A00011L, 0x0009000200410441L, 0x0000840C22080250L, 0x2040801422082222L,
+		0x2104104020208100L, 0x00C4048002082800L, 0x0440300802008200L, 0x8820080009004008L,
+		0x1110840003802002L, 0x4208020021411480L, 0x0302008202080112L, 0x8000508401040104L,
+		0x0010042080044900L, 0x1002021001A04140L, 0x0040140200140808L, 0x0014400A00002200L,
+		0x8090020081A01004L, 0x0020080080210880L, 0x1008880100028890L, 0x00808A020010490CL,
+		0x8180840442192000L, 0x4009010820800200L, 0x0201040024028204L, 0x0010608420220400L,
+		0x0000012011000200L, 0x002109100080A102L, 0x0208081088990400L, 0x0450042688871020L,
+		0x002C024A0A600050L, 0x0802008201102000L, 0x50001C8048086212L, 0x1E04004020880180L,
+		0x1004002020410800L, 0x420120041000890AL, 0x2010301080848208L, 0x40C5014403020408L,
+		0x4040220050080830L, 0x800003004104A000L, 0x008820050080D004L, 0x8204008001420880L,
+		0x0200800510020220L, 0x0084400409101100L, 0x181012024A042402L, 0x0811041008504100L
+	};
+	private static final int[] BISHOP_SHIFTS = new int[64];
+	private static final int[] BISHOP_OFFSETS = new int[64];
+	private static final long[] BISHOP_TABLE = new long[0x1480];
+	private static final long[] ROOK_MASKS = new long[64];
+	private static final long[] ROOK_MAGICS = {
+		0x0A80004000801220L, 0x10C0100040002000L, 0x0100102000410009L, 0x0B0021000C100008L,
+		0x4080080080040002L, 0x0200019004080200L, 0x0400080A10112684L, 0x20800A4D00062080L,
+		0x2091800020804000L, 0x0044401000200040L, 0x1001002000401108L, 0x1001800801100081L,
+		0x0001000500080010L, 0x1000808002000400L, 0x0404000482100108L, 0x0003000182610002L,
+		0x0440848002C00420L, 0x2010890040010021L, 0x8800110020044300L, 0x0208010100201000L,
+		0x1222020004102008L, 0x0000808002000400L, 0x20040400094A9008L, 0x0000420000804401L,
+		0x0040002880004680L, 0x0000200240100040L, 0x0020008180201001L, 0x01080080800C1000L,
+		0x0104040080800800L, 0x4800020080040080L, 0x0002000200840108L, 0x00A1000100006082L,
+		0x8004400088800260L, 0x0100804000802008L, 0x0010008010802002L, 0x000C801000800800L,
+		0x0C51800402800800L, 0x0002800200800400L, 0x0000820804000110L, 0x4003808042000401L,
+		0x00208020C0018000L, 0x4400402010004009L, 0x22100400A800E000L, 0x0E020021400A0013L,
+		0x10A0080100110005L, 0x0004010002004040L, 0x0024080102040010L, 0x4154089108420014L,
+		0x0182400080002380L, 0x0000400110802100L, 0x0000100080200480L, 0x100A000820401200L,
+		0x8081004020801002L, 0x0002000408100200L, 0x03223A1008010C00L, 0x000000831C014200L,
+		0x4200208009001041L, 0xC001004000881021L, 0x1008200100100841L, 0x0000082240920032L,
+		0x4002000804201102L, 0xB821000804000201L, 0x4080C208102100A4L, 0x02020900418C0CA2L
+	};
+	private static final int[] ROOK_SHIFTS = new int[64];
+	private static final int[] ROOK_OFFSETS = new int[64];
+	private static final long[] ROOK_TABLE = new long[0x19000];
+
+	static {
+		int[][] knightOffsets = { {1,2},{2,1},{2,-1},{1,-2},{-1,-2},{-2,-1},{-2,1},{-1,2} };
+		int[][] kingOffsets = { {1,0},{1,1},{0,1},{-1,1},{-1,0},{-1,-1},{0,-1},{1,-1} };
+		for(int sq=0;sq<64;sq++) {
+			SQUARE_NAMES[sq] = "ABCDEFGH".charAt(fileOf(sq)) + "" + "12345678".charAt(rankOf(sq));
+			KNIGHT_ATTACKS[sq] = offsetsToBitboard(sq, knightOffsets);
+			KING_ATTACKS[sq] = offsetsToBitboard(sq, kingOffsets);
+			PAWN_ATTACKS[0][sq] = offsetsToBitboard(sq, new int[][] { {-1,1},{1,1} });
+			PAWN_ATTACKS[1][sq] = offsetsToBitboard(sq, new int[][] { {-1,-1},{1,-1} });
+		}
+		int[][] directions = { {1,0},{-1,0},{0,1},{0,-1},{1,1},{-1,-1},{1,-1},{-1,1} };
+		for(int sq=0;sq<64;sq++) {
+			for(int[] d : directions) {
+				long line = slidingRay(sq,d[0],d[1],0L) | slidingRay(sq,-d[0],-d[1],0L) | bit(sq);
+				long between = 0L;
+				for(int f=fileOf(sq)+d[0],r=rankOf(sq)+d[1];f >= 0 && f <= 7 && r >= 0 && r <= 7;f+=d[0],r+=d[1]) {
+					BETWEEN[sq][r*8+f] = between;
+					LINE[sq][r*8+f] = line;
+					between |= bit(r*8+f);
+				}
+			}
+		}
+		initMagics(false, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_OFFSETS, BISHOP_TABLE);
+		initMagics(true, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS, ROOK_TABLE);
+	}
+
+	private Bitboards() { }
+
+	/** Fills in the attack table of every square by enumerating each subset of its relevant occupancy (carry-rippler)
+	 * and storing the attacks that subset produces at its magic index. */
+	private static void initMagics(boolean rook,long[] masks,long[] magics,int[] shifts,int[] offsets,long[] table) {
+		int offset = 0;
+		for(int sq=0;sq<64;sq++) {
+			long mask = relevantOccupancy(rook, sq);
+			masks[sq] = mask;
+			shifts[sq] = 64-popCount(mask);
+			offsets[sq] = offset;
+
+			long subset = 0L;
+			do {
+				int index = (int)((subset * magics[sq]) >>> shifts[sq]);
+				table[offset+index] = rook ? slowRookAttacks(sq, subset) : slowBishopAttacks(sq, subset);
+				subset = (subset - mask) & mask;
+			} while(subset != 0);
+
+			offset += 1 << popCount(mask);
+		}
+	}
+
+	private static long offsetsToBitboard(int sq,int[][] offsets) {
+		long bb = 0L;
+		int file = fileOf(sq), rank = rankOf(sq);
+		for(int i=0;i<offsets.length;i++) {
+			int f = file+offsets[i][0], r = rank+offsets[i][1];
+			if (f >= 0 && f <= 7 && r >= 0 && r <= 7) bb |= bit(r*8+f);
+		}
+		return bb;
+	}
+
+	/** The squares whose occupancy matters for a slider on <tt>sq</tt>: its rays on an empty board, minus the last square of each ray. */
+	private static long relevantOccupancy(boolean rook,int sq) {
+		if (rook) {
+			return ((slidingRay(sq,1,0,0L) | slidingRay(sq,-1,0,0L)) & ~(FILE_A | FILE_H))
+				| ((slidingRay(sq,0,1,0L) | slidingRay(sq,0,-1,0L)) & ~(RANK_1 | RANK_8));
+		}
+		return slowBishopAttacks(sq, 0L) & ~(FILE_A | FILE_H | RANK_1 | RANK_8);
+	}
+
+	private static long slowBishopAttacks(int sq,long occupied) {
+		return slidingRay(sq,1,1,occupied) | slidingRay(sq,-1,1,occupied) |
+			slidingRay(sq,1,-1,occupied) | slidingRay(sq,-1,-1,occupied);
+	}
+
+	private static long slowRookAttacks(int sq,long occupied) {
+		return slidingRay(sq,1,0,occupied) | slidingRay(sq,-1,0,occupied) |
+			slidingRay(sq,0,1,occupied) | slidingRay(sq,0,-1,occupied);
+	}
+
+	/** Walks the ray from <tt>sq</tt> in direction (<tt>df</tt>,<tt>dr</tt>) until the edge of the board
+	 * or the first occupied square (which is included). Only used to build the magic tables. */
+	private static long slidingRay(int sq,int df,int dr,long occupied) {
+		long bb = 0L;
+		int f = fileOf(sq)+df, r = rankOf(sq)+dr;
+		while(f >= 0 && f <= 7 && r >= 0 && r <= 7) {
+			long b = bit(r*8+f);
+			bb |= b;
+			if ((occupied & b) != 0) break;
+			f += df;
+			r += dr;
+		}
+		return bb;
+	}
+
+	/** Returns the squares strictly between <tt>a</tt> and <tt>b</tt> if they share a rank, file or diagonal, 0 otherwise. */
+	public static long between(int a,int b) {
+		return BETWEEN[a][b];
+	}
+
+	public static long bit(int sq) {
+		return 1L << sq;
+	}
+
+	public static int fileOf(int sq) {
+		return sq & 7;
+	}
+
+	public static int rankOf(int sq) {
+		return sq >>> 3;
+	}
+
+	/** Index of the least significant set bit. Undefined for an empty bitboard. */
+	public static int lsb(long bb) {
+		return Long.numberOfTrailingZeros(bb);
+	}
+
+	public static int popCount(long bb) {
+		return Long.bitCount(bb);
+	}
+
+	/** Converts a square name (eg "e4" or "E4") into its 0-63 index. */
+	public static int squareIndex(String square) {
+		if (square.length() != 2) throw new IllegalArgumentException("Square should be of length 2: " + square);
+		return squareIndex(square.charAt(0), square.charAt(1));
+	}
+
+	/** Converts a file and rank character (eg 'e','4') into a 0-63 index, or returns -1 if the characters do not name a square. */
+	public static int squareIndex(char file,char rank) {
+		int f = (file | 0x20) - 'a'; // lower case the file
+		int r = rank - '1';
+		if (f < 0 || f > 7 || r < 0 || r > 7) return -1;
+		return r*8+f;
+	}
+
+	/** Returns the upper case square name of a 0-63 index (eg 28 = "E4"), matching the notation used by PositionState. */
+	public static String squareName(int sq) {
+		return SQUARE_NAMES[sq];
+	}
+
+	public static long knightAttacks(int sq) {
+		return KNIGHT_ATTACKS[sq];
+	}
+
+	public static long kingAttacks(int sq) {
+		return KING_ATTACKS[sq];
+	}
+
+	/** Squares attacked by a pawn of the given color standing on <tt>sq</tt>. */
+	public static long pawnAttacks(boolean white,int sq) {
+		return PAWN_ATTACKS[white?0:1][sq];
+	}
+
+	/** Squares attacked by a bishop on <tt>sq</tt>, up to and including the first blocker in each direction. */
+	public static long bishopAttacks(int sq,long occupied) {
+		return BISHOP_TABLE[BISHOP_OFFSETS[sq] + (int)(((occupied & BISHOP_MASKS[sq]) * BISHOP_MAGICS[sq]) >>> BISHOP_SHIFTS[sq])];
+	}
+
+	/** Squares attacked by a rook on <tt>sq</tt>, up to and including the first blocker in each direction. */
+	public static long rookAttacks(int sq,long occupied) {
+		return ROOK_TABLE[ROOK_OFFSETS[sq] + (int)(((occupied & ROOK_MASKS[sq]) * ROOK_MAGICS[sq]) >>> ROOK_SHIFTS[sq])];
+	}
+
+	public static long queenAttacks(int sq,long occupied) {
+		return bishopAttacks(sq, occupied) | rookAttacks(sq, occupied);
+	}
+
+	/** Returns the whole rank, file or diagonal through <tt>a</tt> and <tt>b</tt>, from edge to edge, or 0 if they share none. */
+	public static long line(int a,int b) {
+		return LINE[a][b];
+	}
+
+	/** Returns the upper case names of all squares set in <tt>bb</tt>, from A1 to H8. */
+	public static String[] toSquares(long bb) {
+		String[] arr = new String[popCount(bb)];
+		for(int i=0;bb != 0;i++) {
+			arr[i] = squareName(lsb(bb));
+			bb &= bb-1;
+		}
+		return arr;
+	}
+}
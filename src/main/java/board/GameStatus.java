@@ -0,0 +1,61 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** The state of a game after a move: still going on, or drawn or won and why.<br />
+ * FIFTY_MOVE_RULE and REPETITION are draws a player may claim; the game goes on until one does.
+ * Every other status but ONGOING ends the game by itself.
+ * @see PositionState#getGameStatus(boolean)
+ * @see Board#getGameStatus() */
+public enum GameStatus {
+	ONGOING (false,false),
+	/** The side to move is in check and has no legal move. */
+	CHECKMATE (false,false),
+	/** The side to move is not in check and has no legal move. */
+	STALEMATE (true,false),
+	/** Neither side has the material left to give mate (K v K, K and a minor piece v K, or only bishops on one color). */
+	INSUFFICIENT_MATERIAL (true,false),
+	/** 50 moves by each side without a capture or pawn move. A draw that a player can claim. */
+	FIFTY_MOVE_RULE (true,true),
+	/** 75 moves by each side without a capture or pawn move, which draws the game without a claim. */
+	SEVENTY_FIVE_MOVE_RULE (true,false),
+	/** The same position has occurred three times. A draw that a player can claim.
+	 * Only Board reports it, since a single position does not know the positions before it. */
+	REPETITION (true,true),
+	/** The same position has occurred five times, which draws the game without a claim. Only Board reports it. */
+	FIVEFOLD_REPETITION (true,false);
+	
+	private boolean draw;
+	private boolean claimable;
+	private GameStatus(boolean draw,boolean claimable) {
+		this.draw = draw;
+		this.claimable = claimable;
+	}
+	
+	/** Returns if this is a draw a player may claim, rather than one that ends the game by itself. */
+	public boolean isClaimable() {
+		return claimable;
+	}
+	
+	public boolean isDraw() {
+		return draw;
+	}
+	
+	/** Returns if the game is over without anyone having to claim a draw. */
+	public boolean isGameOver() {
+		return this != ONGOING && !claimable;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** A reusable list of packed moves (see PackedMove) backed by a primitive int[].<br />
+ * The move generator writes into a MoveList instead of building a new array, so the same
+ * instance can be cleared and filled again for every position without producing garbage. */
+public class MoveList {
+	/** No legal chess position has more than 218 moves. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private int[] moves;
+	private int size;
+
+	public MoveList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public MoveList(int capacity) {
+		moves = new int[capacity];
+	}
+
+	public void add(int move) {
+		if (size == moves.length) {
+			int[] arr = new int[moves.length*2];
+			System.arraycopy(moves, 0, arr, 0, size);
+			moves = arr;
+		}
+		moves[size++] = move;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean contains(int move) {
+		return indexOf(move) >= 0;
+	}
+
+	public int get(int index) {
+		return moves[index];
+	}
+
+	public int indexOf(int move) {
+		for(int i=0;i<size;i++) {
+			if (moves[i] == move) return i;
+		}
+		return -1;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void set(int index,int move) {
+		moves[index] = move;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Sorts the moves by their packed value, which gives the same order for the same position whatever order they were generated in. */
+	public void sort() {
+		java.util.Arrays.sort(moves, 0, size);
+	}
+
+	public void swap(int i,int j) {
+		int tmp = moves[i];
+		moves[i] = moves[j];
+		moves[j] = tmp;
+	}
+
+	/** Truncates the list to its first <tt>size</tt> moves. */
+	public void truncate(int size) {
+		if (size < this.size) this.size = size;
+	}
+
+	/** Returns the moves in UCI form. Meant for debugging; this allocates a String per move. */
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("[");
+		for(int i=0;i<size;i++) {
+			if (i > 0) b.append(", ");
+			b.append(PackedMove.toUci(moves[i]));
+		}
+		return b.append("]").toString();
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** Parses a move as a player types it and finds it among the legal moves of a BitboardPosition.<br />
+ * Accepted forms, ignoring case where it is not ambiguous:<br />
+ * <tt>e4, exd5, exd, Nf3, Nbd7, R1e2, Qh4xe1, e8=Q, e8Q, exd8=N</tt> - standard algebraic notation (SAN)<br />
+ * <tt>e2e4, e2-e4, e7e8q, g1f3, e1g1</tt> - long algebraic / UCI notation<br />
+ * <tt>Qd8xd5, Pe2e4, QxP</tt> - the looser forms FICS accepts (the last one captures the only pawn the queen can take)<br />
+ * <tt>O-O, 0-0-0, oo</tt> - castling<br />
+ * <tt>P@e4</tt> - piece drops, which are only tokenized (see isDrop()) since a BitboardPosition has no pieces in hand.<br />
+ * Check, mate and annotation marks (<tt>+ # ! ?</tt>), "x", "-", "=" and "e.p." are skipped.
+ * A lower case "b" is read as the b-file when that gives a legal pawn move, and as a bishop otherwise.
+ * A missing promotion piece means a queen.<br /><br />
+ * The input is read in a single pass into a small buffer, without regular expressions or temporary strings,
+ * and the parser keeps its buffers between calls, so reuse one instance (from a single thread). */
+public class MoveParser {
+	/** parse() result: the input is not a move in any of the accepted forms */
+	public static final int MALFORMED = -1;
+	/** parse() result: no legal move matches the input */
+	public static final int ILLEGAL = -2;
+	/** parse() result: more than one legal move matches the input */
+	public static final int AMBIGUOUS = -3;
+
+	private static final int MAX_LENGTH = 8;
+	private static final int NO_CASTLE = 0, KINGSIDE = 1, QUEENSIDE = 2;
+
+	private final char[] buf = new char[MAX_LENGTH];
+	/** created on first use, so tokenize() alone allocates nothing */
+	private MoveList moves;
+
+	/* the last tokenized move; -1 where a part was not given */
+	private int piece;
+	private int fromFile, fromRank;
+	private int toFile, toRank;
+	/** type of the piece captured in the QxP form */
+	private int target;
+	/** BitboardPosition type of the promotion piece, or 0 */
+	private int promotion;
+	private int castle;
+	private boolean drop;
+	/** the input began with a lower case "b" that may be a file or a bishop */
+	private boolean bishopOrPawn;
+
+	/** Returns the BitboardPosition type of the upper or lower case piece letter <tt>c</tt>, or -1. */
+	private static int pieceType(char c) {
+		switch(c | 0x20) {
+			case 'k': return BitboardPosition.KING;
+			case 'q': return BitboardPosition.QUEEN;
+			case 'r': return BitboardPosition.ROOK;
+			case 'b': return BitboardPosition.BISHOP;
+			case 'n': return BitboardPosition.KNIGHT;
+			case 'p': return BitboardPosition.PAWN;
+			default: return -1;
+		}
+	}
+
+	private static boolean isFile(char c) {
+		return c >= 'a' && c <= 'h';
+	}
+
+	private static boolean isRank(char c) {
+		return c >= '1' && c <= '8';
+	}
+
+	/** Returns the BitboardPosition type (KING-PAWN) of the piece placed by the last tokenized drop. Only valid if isDrop(). */
+	public int getDropPiece() {
+		return piece;
+	}
+
+	/** Returns the 0-63 square of the last tokenized drop. Only valid if isDrop(). */
+	public int getDropSquare() {
+		return toRank*8+toFile;
+	}
+
+	/** Returns if the last tokenized move is a piece drop (eg "P@e4"). */
+	public boolean isDrop() {
+		return drop;
+	}
+
+	/** Tokenizes <tt>input</tt> and finds the legal move of the side to move in <tt>position</tt> that it denotes.
+	 * @return the move packed as by PackedMove, or MALFORMED, ILLEGAL or AMBIGUOUS (all negative).
+	 * A drop returns MALFORMED, see isDrop(). */
+	public int parse(BitboardPosition position,CharSequence input) {
+		if (!tokenize(input) || drop) return MALFORMED;
+		return resolve(position);
+	}
+
+	/** Finds the legal move of the side to move in <tt>position</tt> matching the last tokenized move.
+	 * @return the packed move, ILLEGAL or AMBIGUOUS */
+	public int resolve(BitboardPosition position) {
+		if (moves == null) moves = new MoveList();
+		position.generateLegalMoves(moves);
+		if (castle != NO_CASTLE) {
+			for(int i=0;i<moves.size();i++) {
+				int move = moves.get(i);
+				if (PackedMove.isCastle(move) && (PackedMove.to(move) & 7) == (castle == KINGSIDE ? 6 : 2)) return move;
+			}
+			return ILLEGAL;
+		}
+		if (bishopOrPawn) {
+			// "bc3" or "bxc3": a b-pawn if one can get there, a bishop otherwise
+			int move = find(position, BitboardPosition.PAWN, 1);
+			return move != ILLEGAL ? move : find(position, BitboardPosition.BISHOP, -1);
+		}
+		return find(position, piece, fromFile);
+	}
+
+	private int find(BitboardPosition position,int type,int file) {
+		int found = ILLEGAL;
+		for(int i=0;i<moves.size();i++) {
+			int move = moves.get(i);
+			int from = PackedMove.from(move), to = PackedMove.to(move);
+			if (toRank >= 0 ? to != toRank*8+toFile : toFile >= 0 && (to & 7) != toFile) continue;
+			if (target >= 0 && position.getPiece(to).ordinal() % 6 != target) continue;
+			if (type >= 0 && position.getPiece(from).ordinal() % 6 != type) continue;
+			if ((file >= 0 && (from & 7) != file) || (fromRank >= 0 && (from >>> 3) != fromRank)) continue;
+			if (PackedMove.promotion(move) != (promotion != 0 || !PackedMove.isPromotion(move) ? promotion : BitboardPosition.QUEEN)) continue;
+			if (found != ILLEGAL) return AMBIGUOUS;
+			found = move;
+		}
+		return found;
+	}
+
+	/** Reads <tt>input</tt> into its parts. Returns false if it is not a move in any of the accepted forms. */
+	public boolean tokenize(CharSequence input) {
+		piece = fromFile = fromRank = toFile = toRank = target = -1;
+		promotion = 0;
+		castle = NO_CASTLE;
+		drop = bishopOrPawn = false;
+
+		int len = 0;
+		boolean castling = true;
+		for(int i=0;i<input.length();i++) {
+			char c = input.charAt(i);
+			switch(c) {
+				case '-': case 'x': case 'X': case ':': case '+': case '#': case '!': case '?': case '=': case '.': case ' ':
+					continue;
+			}
+			if (len == MAX_LENGTH) return false;
+			buf[len++] = c;
+			castling &= c == 'O' || c == 'o' || c == '0';
+		}
+		if (castling && (len == 2 || len == 3)) {
+			castle = len == 2 ? KINGSIDE : QUEENSIDE;
+			return true;
+		}
+		// "exd6 e.p." leaves "ed6ep"
+		if (len >= 5 && buf[len-2] == 'e' && buf[len-1] == 'p' && isRank(buf[len-3])) len -= 2;
+
+		if (len == 4 && buf[1] == '@') {
+			piece = pieceType(buf[0]);
+			char file = (char)(buf[2] | 0x20);
+			if (piece < 0 || !isFile(file) || !isRank(buf[3])) return false;
+			toFile = file-'a';
+			toRank = buf[3]-'1';
+			drop = true;
+			return true;
+		}
+
+		// from the end: promotion piece, then the destination
+		int end = len;
+		if (end >= 3 && isRank(buf[end-2]) && pieceType(buf[end-1]) > BitboardPosition.KING && pieceType(buf[end-1]) < BitboardPosition.PAWN) {
+			promotion = pieceType(buf[--end]);
+		}
+		if (end >= 2 && isRank(buf[end-1]) && isFile((char)(buf[end-2] | 0x20))) {
+			toFile = (buf[end-2] | 0x20)-'a';
+			toRank = buf[end-1]-'1';
+			end -= 2;
+		} else if (end >= 2 && isFile(buf[end-1])) {
+			// a pawn capture given by files only, eg "exd"
+			toFile = buf[--end]-'a';
+		} else if (end >= 2 && pieceType(buf[end-1]) >= 0 && buf[end-1] != 'b') {
+			target = pieceType(buf[--end]);
+		} else {
+			return false;
+		}
+
+		// the rest: piece letter, then the file and rank it moves from
+		int i = 0;
+		if (end > 0) {
+			char c = buf[0];
+			if (c == 'b' && end == 1 && toRank >= 0) {
+				bishopOrPawn = true;
+				i = 1;
+			} else if (c >= 'A' && c <= 'Z' || (c != 'b' && pieceType(c) >= 0) || (c == 'b' && end > 1 && !isRank(buf[1]))) {
+				piece = pieceType(c);
+				if (piece < 0) return false;
+				i = 1;
+			}
+		}
+		if (i < end && isFile(buf[i])) fromFile = buf[i++]-'a';
+		if (i < end && isRank(buf[i])) fromRank = buf[i++]-'1';
+		if (i != end) return false;
+		if (piece < 0 && !bishopOrPawn && (fromFile < 0 || fromRank < 0)) piece = BitboardPosition.PAWN;
+		if (target >= 0 && piece < 0) return false;
+		return true;
+	}
+}
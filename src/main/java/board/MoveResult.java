@@ -0,0 +1,55 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** The outcome of Board.tryMove(): the MoveStatus, and for a move that was played, the GameStatus of the game
+ * after it, so a draw the side to move may now claim (fifty moves, threefold repetition) or the end of the game
+ * comes with the move instead of from a second call to Board.getGameStatus().
+ * @see Board#tryMove(boolean, String) */
+public class MoveResult {
+	private final MoveStatus status;
+	private final GameStatus gameStatus;
+	
+	MoveResult(MoveStatus status,GameStatus gameStatus) {
+		this.status = status;
+		this.gameStatus = gameStatus;
+	}
+	
+	/** Returns MoveStatus.OK if the move was played, otherwise why it was not. */
+	public MoveStatus getStatus() {
+		return status;
+	}
+	
+	/** Returns the status of the game after the move, as Board.getGameStatus() would, or null if the move was not played. */
+	public GameStatus getGameStatus() {
+		return gameStatus;
+	}
+	
+	/** Returns if the move was played. */
+	public boolean isLegal() {
+		return status.isLegal();
+	}
+	
+	/** Returns if the side to move may now claim a draw. */
+	public boolean isClaimable() {
+		return gameStatus != null && gameStatus.isClaimable();
+	}
+	
+	@Override
+	public String toString() {
+		return gameStatus == null ? status.toString() : status + " (" + gameStatus + ")";
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** The outcome of Board.validate(), and of Board.tryMove() as part of its MoveResult: the move was legal, or why it was refused.<br />
+ * These are returned instead of thrown, so a refused move costs no more than a legal one.
+ * @see Board#tryMove(boolean, String)
+ * @see Board#move(boolean, String) */
+public enum MoveStatus {
+	/** The move is legal (and was played, by tryMove()). */
+	OK,
+	/** The input is not a move in any notation MoveParser accepts. */
+	MALFORMED,
+	/** No legal move matches the input. */
+	ILLEGAL,
+	/** More than one legal move matches the input (eg "Nd2" when both knights can go there). */
+	AMBIGUOUS,
+	/** It is the other color's move. */
+	WRONG_COLOR,
+	/** A piece drop onto a square that is not empty. */
+	OCCUPIED;
+	
+	public boolean isLegal() {
+		return this == OK;
+	}
+}
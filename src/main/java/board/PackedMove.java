@@ -0,0 +1,101 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** Static methods to build and read moves packed into a single int, so the move generator never allocates.<br /><br />
+ * <code>
+ * bits 0-5: from square (0-63, A1 = 0)<br />
+ * bits 6-11: to square<br />
+ * bits 12-14: promotion piece type (0 = none, 1 = queen, 2 = rook, 3 = bishop, 4 = knight)<br />
+ * bits 15-18: CAPTURE, EN_PASSANT, CASTLE and DOUBLE_PUSH flags
+ * </code>
+ * <p>Notation is only built when toUci() is called.</p> */
+public final class PackedMove {
+	/** A value that is never a valid move (A1 to A1). */
+	public static final int NONE = 0;
+
+	public static final int CAPTURE = 1 << 15;
+	public static final int EN_PASSANT = 1 << 16;
+	public static final int CASTLE = 1 << 17;
+	public static final int DOUBLE_PUSH = 1 << 18;
+
+	/** Promotion piece types, as encode() takes and promotion() returns. They are the white Piece ordinals. */
+	public static final int QUEEN = 1, ROOK = 2, BISHOP = 3, KNIGHT = 4;
+
+	private static final Piece[] PIECES = Piece.values();
+
+	private PackedMove() { }
+
+	/** @param promotion 0 for none, otherwise the promotion piece type (QUEEN, ROOK, BISHOP or KNIGHT)
+	 * @param flags any combination of CAPTURE, EN_PASSANT, CASTLE and DOUBLE_PUSH */
+	public static int encode(int from,int to,int promotion,int flags) {
+		return from | (to << 6) | (promotion << 12) | flags;
+	}
+
+	public static int from(int move) {
+		return move & 0x3F;
+	}
+
+	public static int to(int move) {
+		return (move >>> 6) & 0x3F;
+	}
+
+	/** Returns the promotion piece type (QUEEN, ROOK, BISHOP or KNIGHT), or 0 if this is not a promotion. */
+	public static int promotion(int move) {
+		return (move >>> 12) & 0x7;
+	}
+
+	/** Returns the piece a pawn of the given color is promoted to, or null if this is not a promotion. */
+	public static Piece getPromotionPiece(int move,boolean white) {
+		int type = promotion(move);
+		if (type == 0) return null;
+		return PIECES[white ? type : type+6];
+	}
+
+	public static boolean isCapture(int move) {
+		return (move & CAPTURE) != 0;
+	}
+
+	public static boolean isCastle(int move) {
+		return (move & CASTLE) != 0;
+	}
+
+	public static boolean isDoublePush(int move) {
+		return (move & DOUBLE_PUSH) != 0;
+	}
+
+	public static boolean isEnPassant(int move) {
+		return (move & EN_PASSANT) != 0;
+	}
+
+	public static boolean isPromotion(int move) {
+		return promotion(move) != 0;
+	}
+
+	/** Returns the move in UCI / long algebraic form as used by PositionState.generateLegalMoves(), eg "e2e4" or "e7e8q". */
+	public static String toUci(int move) {
+		StringBuilder b = new StringBuilder(5);
+		appendSquare(b, from(move));
+		appendSquare(b, to(move));
+		int type = promotion(move);
+		if (type != 0) b.append(PIECES[type+6].getAbbreviation());
+		return b.toString();
+	}
+
+	private static void appendSquare(StringBuilder b,int sq) {
+		b.append((char)('a'+Bitboards.fileOf(sq))).append((char)('1'+Bitboards.rankOf(sq)));
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** Runs perft on several threads.<br />
+ * The first two plies are split into one task per (move, reply) pair, which gives enough tasks to keep every
+ * thread busy even when a few root moves have much bigger subtrees than the rest. Each task walks its subtree
+ * on its own copy of the position, and all tasks share one PerftHashTable so a subtree reached by
+ * transposition in another task is only counted once.
+ * <p>Call shutdown() when done to stop the worker threads.</p> */
+public class ParallelPerft {
+	public static final int DEFAULT_HASH_MB = 64;
+
+	/** Work done by one worker thread since the last resetStats(). */
+	public static class WorkerStats {
+		private final String name;
+		private int tasks;
+		private long nodes;
+		private long nanos;
+
+		private WorkerStats(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** Returns the leaf nodes counted by this worker, including those taken from the hash table. */
+		public long getNodes() {
+			return nodes;
+		}
+
+		/** Returns the time this worker spent running tasks, in nanoseconds. */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getNodesPerSecond() {
+			return nanos == 0 ? 0 : (long)(nodes*1e9/nanos);
+		}
+
+		public int getTasks() {
+			return tasks;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + tasks + " tasks, " + nodes + " nodes, " + getNodesPerSecond() + " nps";
+		}
+	}
+
+	private final ExecutorService pool;
+	private final PerftHashTable table;
+	private final int threads;
+	/** keyed by thread name; guarded by itself */
+	private final Map<String,WorkerStats> stats = new TreeMap<String,WorkerStats>();
+
+	/** Creates a runner with <tt>threads</tt> worker threads and a DEFAULT_HASH_MB hash table. */
+	public ParallelPerft(int threads) {
+		this(threads, DEFAULT_HASH_MB);
+	}
+
+	public ParallelPerft(int threads,int hashMegabytes) {
+		if (threads < 1) throw new IllegalArgumentException("Thread count should be at least 1: " + threads);
+		this.threads = threads;
+		this.table = new PerftHashTable(hashMegabytes);
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "perft-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/** Clears the shared hash table, so the next run starts cold. */
+	public void clearHashTable() {
+		table.clear();
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/** Returns the work done by each worker thread since the last resetStats(), ordered by thread name. */
+	public List<WorkerStats> getWorkerStats() {
+		synchronized(stats) {
+			return new ArrayList<WorkerStats>(stats.values());
+		}
+	}
+
+	/** Counts the leaf nodes <tt>depth</tt> plies below <tt>position</tt>, which is not changed. */
+	public long perft(BitboardPosition position,int depth) {
+		if (depth < 3) return position.copy().perft(depth, table);
+
+		BitboardPosition root = position.copy();
+		MoveList moves = new MoveList();
+		MoveList replies = new MoveList();
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		root.generateLegalMoves(moves);
+		for(int i=0;i<moves.size();i++) {
+			root.doMove(moves.get(i));
+			root.generateLegalMoves(replies);
+			for(int j=0;j<replies.size();j++) {
+				BitboardPosition b = root.copy();
+				b.doMove(replies.get(j));
+				tasks.add(new Task(b, depth-2));
+			}
+			root.undoMove();
+		}
+
+		long nodes = 0;
+		try {
+			for(Future<Long> f : pool.invokeAll(tasks)) {
+				nodes += f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running perft", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Perft task failed", e.getCause());
+		}
+		return nodes;
+	}
+
+	public void resetStats() {
+		synchronized(stats) {
+			stats.clear();
+		}
+	}
+
+	/** Stops the worker threads. This instance cannot be used afterwards. */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private class Task implements Callable<Long> {
+		private final BitboardPosition position;
+		private final int depth;
+
+		private Task(BitboardPosition position,int depth) {
+			this.position = position;
+			this.depth = depth;
+		}
+
+		public Long call() {
+			long start = System.nanoTime();
+			long nodes = position.perft(depth, table);
+			long nanos = System.nanoTime() - start;
+			String name = Thread.currentThread().getName();
+			synchronized(stats) {
+				WorkerStats s = stats.get(name);
+				if (s == null) {
+					s = new WorkerStats(name);
+					stats.put(name, s);
+				}
+				s.tasks++;
+				s.nodes += nodes;
+				s.nanos += nanos;
+			}
+			return nodes;
+		}
+	}
+}
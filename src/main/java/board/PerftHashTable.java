@@ -0,0 +1,62 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** A fixed size table of perft subtree counts keyed by Zobrist key, safe to share between threads without locking.<br />
+ * Each entry is two longs: the key XOR the data, and the data (depth in the top 8 bits, node count in the rest).
+ * A reader only accepts an entry if the XOR of both halves gives back its key, so an entry torn by two threads
+ * writing at once reads as a miss instead of a wrong count.
+ * @see http://www.craftychess.com/hyatt/hashing.html */
+public class PerftHashTable {
+	private static final long COUNT_MASK = (1L << 56) - 1;
+
+	private final long[] table;
+	private final int mask;
+
+	/** Creates a table using about <tt>megabytes</tt> MB of memory (rounded down to a power of two entries, at most 8 GB). */
+	public PerftHashTable(int megabytes) {
+		long entries = Math.max(1L, (long)megabytes * 1024 * 1024 / 16);
+		// two longs per entry, so the array length stays below 2^31
+		int size = Integer.highestOneBit((int)Math.min(entries, 1 << 29));
+		table = new long[size*2];
+		mask = size-1;
+	}
+
+	public void clear() {
+		java.util.Arrays.fill(table, 0L);
+	}
+
+	/** Returns the number of entries. */
+	public int size() {
+		return mask+1;
+	}
+
+	/** Returns the stored node count for <tt>key</tt> at <tt>depth</tt>, or -1 if there is none. */
+	public long probe(long key,int depth) {
+		int i = ((int)key & mask) << 1;
+		long data = table[i+1];
+		if ((table[i] ^ data) != key || (int)(data >>> 56) != depth) return -1;
+		return data & COUNT_MASK;
+	}
+
+	/** Stores the node count of the subtree of <tt>depth</tt> plies below the position with <tt>key</tt>, replacing whatever was there. */
+	public void store(long key,int depth,long nodes) {
+		int i = ((int)key & mask) << 1;
+		long data = ((long)depth << 56) | (nodes & COUNT_MASK);
+		table[i] = key ^ data;
+		table[i+1] = data;
+	}
+}
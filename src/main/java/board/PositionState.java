@@ -19,6 +19,7 @@ import java.awt.Point;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import board.printer.BoardPrinter;
 import board.printer.DefaultPrinter;
@@ -45,21 +46,15 @@ public class PositionState {
 		return board;
 	}
 	/** Method to deep copy an instance of HashMap<Piece,List<String>>. 
+	 * The square names are immutable Strings, so only the lists are copied.
 	 * 
 	 * @param oldMap
 	 * @since Tuesday, November 08, 2011
 	 * @author John */
 	private static HashMap<Piece,List<String>> deepCopyHashMap(HashMap<Piece,List<String>> oldMap) {
-		Piece[] arr = oldMap.keySet().toArray(new Piece[oldMap.keySet().size()]);
-		HashMap<Piece,List<String>> map = new HashMap<Piece,List<String>>(arr.length);
-		for(int i=0;i<arr.length;i++) {
-			List<String> oldlist = oldMap.get(arr[i]);
-			int ct = oldlist.size();
-			List<String> newlist = new ArrayList<String>(ct);
-			for(int j=0;j<ct;j++) {
-				newlist.add(new String(oldlist.get(j)));
-			}
-			map.put(arr[i],newlist);
+		HashMap<Piece,List<String>> map = new HashMap<Piece,List<String>>(oldMap.size()*2);
+		for(java.util.Map.Entry<Piece,List<String>> entry : oldMap.entrySet()) {
+			map.put(entry.getKey(),new ArrayList<String>(entry.getValue()));
 		}
 		
 		return map;
@@ -67,39 +62,7 @@ public class PositionState {
 	
 	/** Generates pseudo-legal moves as if a bishop was on <tt>startingSquare</tt>. */
 	protected static String[] generatePseudoLegalBishopMoves(String startingSquare) {
-		List<String> list = new ArrayList<String>();
-		
-		int sq = squareTo0x88(startingSquare);
-		
-		int mysq = sq;
-		while(mysq % 0x10 != 0x7) {
-			mysq += 0x11;
-			if ((mysq & 0x88) > 0) break;
-			list.add(squareFrom0x88(mysq));
-		}
-		
-		mysq = sq;
-		while (((mysq-0x11) & 0x88) == 0) {
-			mysq -= 0x11;
-			list.add(squareFrom0x88(mysq));
-		}
-		
-		mysq = sq;
-		while(mysq % 0x10 != 0) {
-			mysq += 0xF;
-			if ((mysq & 0x88) > 0) break;
-			list.add(squareFrom0x88(mysq));
-		}
-		
-		mysq = sq;
-		while (((mysq-0xF) & 0x88) == 0) {
-			mysq -= 0xF;
-			if ((mysq & 0x88) > 0) break;
-			list.add(squareFrom0x88(mysq));
-		}
-		
-		
-		return list.toArray(new String[list.size()]);
+		return Bitboards.toSquares(Bitboards.bishopAttacks(Bitboards.squareIndex(startingSquare), 0L));
 	}
 	
 	/** Generates pseudo-legal moves as if a king was on <tt>startingSquare</tt>. */
@@ -127,42 +90,12 @@ public class PositionState {
 	
 	/** Generates pseudo-legal moves as if a queen was on <tt>startingSquare</tt>. */
 	protected static String[] generatePseudoLegalQueenMoves(String startingSquare) {
-		String[] bishop = generatePseudoLegalBishopMoves(startingSquare);
-		String[] rook = generatePseudoLegalRookMoves(startingSquare);
-		
-		ArrayList<String> list = new ArrayList<String>();
-		list.ensureCapacity(bishop.length+rook.length);
-		for(int i=0;i<bishop.length;i++) {
-			list.add(bishop[i]);
-		}
-		for(int i=0;i<rook.length;i++) {
-			if (!list.contains(rook[i])) {
-				list.add(rook[i]);
-			}
-		}
-		
-		String[] arr = list.toArray(new String[list.size()]);
-		java.util.Arrays.sort(arr);
-		return arr;
+		return Bitboards.toSquares(Bitboards.queenAttacks(Bitboards.squareIndex(startingSquare), 0L));
 	}
 	
 	/** Generates pseudo-legal moves as if a rook was on <tt>startingSquare</tt>. */
 	protected static String[] generatePseudoLegalRookMoves(String startingSquare) {
-		List<String> list = new ArrayList<String>();
-		
-		final int sq = squareTo0x88(startingSquare);
-		
-		int mysq = sq;
-		int[] directions = { -0x1, 0x1, -0x10, 0x10 };
-		for(int i=0;i<directions.length;i++) {
-			mysq = sq;
-			while((mysq+directions[i] & 0x88) == 0) {
-				mysq += directions[i];
-				list.add(squareFrom0x88(mysq));
-			}
-		}
-		
-		return list.toArray(new String[list.size()]);
+		return Bitboards.toSquares(Bitboards.rookAttacks(Bitboards.squareIndex(startingSquare), 0L));
 	}
 	
 	/** Generates pseudo-legal moves as if a king was on <tt>startingSquare</tt>. */
@@ -333,7 +266,7 @@ public class PositionState {
 	
 	public static boolean isSameFile(String from,String to) {
 		int direction = getDirectionBetween(from, to);
-		return direction == 0xF || direction == -0xF;
+		return direction == 0x10 || direction == -0x10;
 	}
 	
 	public static boolean isSameRank(String from,String to) {
@@ -420,6 +353,7 @@ public class PositionState {
 		s.numHalfMoves = Integer.parseInt(arr[3]);
 		s.numFullMoves = Integer.parseInt(arr[4])*2;
 		s.addPiecesToHashmap();
+		s.zobristKey = s.computeZobristKey();
 		return s;
 	}
 	
@@ -460,6 +394,9 @@ public class PositionState {
 	
 	private Piece[][] board = new Piece[8][8];
 	
+	/** Bitboard of the occupied squares (A1 = bit 0), kept in sync with <tt>board</tt> for the magic bitboard slider lookups. */
+	private long occupied;
+	
 	/* ALL of the following variables are parsed out 
 	 * from the position - none are provided by the user */
 	private String castlingRights = "KQkq";
@@ -494,6 +431,9 @@ public class PositionState {
 	
 	public String whiteKing = null;
 	
+	/** Zobrist key of the pieces, side to move, castling rights and en passant file. Updated incrementally, see Zobrist. */
+	private long zobristKey;
+	
 	/** Default constructor. Alias for <tt>this(getStartingPosition());</tt> */
 	public PositionState() {
 		this(getStartingPosition());
@@ -512,10 +452,21 @@ public class PositionState {
 		whiteKing = pieceLocations.get(Piece.WHITE_KING).get(0);
 		blackKing = pieceLocations.get(Piece.BLACK_KING).get(0);
 		isWhitesMove = false;
+		zobristKey = computeZobristKey();
+	}
+	
+	/** Copy constructor used by deepCopy(). Unlike the other constructors it does not scan the board. */
+	private PositionState(PositionState other) {
+		board = deepCopyBoard(other.board);
+		occupied = other.occupied;
+		zobristKey = other.zobristKey;
+		pieceLocations = deepCopyHashMap(other.pieceLocations);
+		promotions = new ArrayList<String>(other.promotions);
 	}
 	
 	/** Scans through the board to find which pieces are on what squares. for use with an optimized version of getAllSquaresWithPiece().*/
 	public void addPiecesToHashmap() {
+		updateOccupied();
 		for(int i=0;i<board.length;i++) {
 			for(int j=0;j<board[i].length;j++) {
 				Piece key = board[i][j];
@@ -544,53 +495,10 @@ public class PositionState {
 		return castlingRights.contains("q");
 	}
 	
-	/**  */
+	/** Returns if <tt>white</tt> has any legal move. Stops at the first legal move found
+	 * instead of generating every move of every piece. */
 	public boolean canSideMove(boolean white) {
-		//return generateLegalMoves(white).length == 0;	
-		Piece[] pieces = getPiecesOnBoard(white);
-		for(int i=0;i<pieces.length;i++) {
-			Piece p = pieces[i];
-			switch(p) {
-				case WHITE_KING: case BLACK_KING: { 
-					String[] arr = generateLegalKingMoves(white);
-					if (arr.length > 0) return true;
-					
-					continue;
-				}
-				case WHITE_PAWN: case BLACK_PAWN: { 
-					String[] arr = generateLegalPawnMoves(white);
-					if (arr.length > 0) return true;
-					
-					continue;
-				}
-				case WHITE_BISHOP: case BLACK_BISHOP: { 
-					String[] arr = generateLegalBishopMoves(white);
-					if (arr.length > 0) return true;
-					
-					continue;
-				}
-				case WHITE_KNIGHT: case BLACK_KNIGHT: { 
-					String[] arr = generateLegalKnightMoves(white);
-					if (arr.length > 0) return true;
-					
-					continue;
-				}
-				case WHITE_QUEEN: case BLACK_QUEEN: { 
-					String[] arr = generateLegalQueenMoves(white);
-					if (arr.length > 0) return true;
-					
-					continue;
-				}
-				case WHITE_ROOK: case BLACK_ROOK: { 
-					String[] arr = generateLegalRookMoves(white);
-					if (arr.length > 0) return true;
-					
-					continue;
-				}
-			}
-		}
-		
-		return false;
+		return toBitboardPosition(white).hasLegalMove(white);
 	}
 	
 	/** This method does NOT take into account castling out of, into, through check. 
@@ -630,10 +538,11 @@ public class PositionState {
 		numFullMoves -= 1;
 		
 		// remove the castling privileges for this player since he has already castled
-		castlingRights = castlingRights.replaceFirst(white?"KQ":"kq","");
+		setCastlingRights(castlingRights.replaceFirst(white?"KQ":"kq",""));
 		
-		numHalfMoves += 1;
-		isWhitesMove = !isWhitesMove;
+		// both makeMove() calls counted a half move
+		numHalfMoves -= 1;
+		setWhitesMove(!isWhitesMove);
 		//System.err.println(castlingRights);
 		return true;
 	}
@@ -642,6 +551,20 @@ public class PositionState {
 		pieceLocations.clear();
 	}
 	
+	/** Computes the Zobrist key of this position from scratch, ignoring the incrementally updated value.
+	 * getZobristKey() should always return the same value. */
+	public long computeZobristKey() {
+		long key = 0L;
+		for(int i=0;i<board.length;i++) {
+			for(int j=0;j<board[i].length;j++) {
+				key ^= Zobrist.piece(board[i][j], i*8+j);
+			}
+		}
+		key ^= Zobrist.castling(castlingRights) ^ Zobrist.enPassant(enpassantSquare);
+		if (!isWhitesMove) key ^= Zobrist.BLACK_TO_MOVE;
+		return key;
+	}
+	
 	/** */
 	public String convertFENToBFEN(String holding,int whiteClock,int blackClock) {
 		// TODO add ability to denote which pieces are promoted
@@ -654,22 +577,127 @@ public class PositionState {
 	
 	/** Deep copies this PositionState instance. */
 	protected PositionState deepCopy() {
-		PositionState s = new PositionState();
-		s.setBoard(deepCopyBoard(board));
-		s.setCastlingRights(new String(castlingRights));
+		PositionState s = new PositionState(this);
+		s.castlingRights = castlingRights;
 		s.isWhitesMove = isWhitesMove;
-		s.enpassantSquare = new String(enpassantSquare);
+		s.enpassantSquare = enpassantSquare;
 		s.numHalfMoves = numHalfMoves;
 		s.numFullMoves = numFullMoves;
 		s.isPawnPromotion = isPawnPromotion;
 		s.piecePromotedTo = piecePromotedTo;
-		s.whiteKing = new String(whiteKing);
-		s.blackKing = new String(blackKing);
-		s.pieceLocations = deepCopyHashMap(pieceLocations);
+		s.whiteKing = whiteKing;
+		s.blackKing = blackKing;
 		s.isDoublePawnPush = isDoublePawnPush;
 		return s;
 	}
 	
+	/** What a move changed in a position: the squares it changed, with the pieces that stood on them before,
+	 * and the rest of the state of the position before it. A few dozen bytes, where a position is a few kilobytes.
+	 * @see PositionState#undoRecord(PositionState)
+	 * @see PositionState#undo(Undo) */
+	static final class Undo {
+		/** 0-63 square indexes (A1 = 0) */
+		private final int[] squares;
+		private final Piece[] pieces;
+		private final String castlingRights;
+		private final String enpassantSquare;
+		private final int isDoublePawnPush;
+		private final boolean isPawnPromotion;
+		private final boolean isWhitesMove;
+		private final int numFullMoves;
+		private final int numHalfMoves;
+		private final Piece piecePromotedTo;
+		private final String whiteKing;
+		private final String blackKing;
+		private final long zobristKey;
+		/** null when there were no promoted pieces */
+		private final String[] promotions;
+		private final String notationInput;
+		private final String prettyNotation;
+		private final String verboseNotation;
+
+		private Undo(PositionState before,int[] squares,Piece[] pieces) {
+			this.squares = squares;
+			this.pieces = pieces;
+			castlingRights = before.castlingRights;
+			enpassantSquare = before.enpassantSquare;
+			isDoublePawnPush = before.isDoublePawnPush;
+			isPawnPromotion = before.isPawnPromotion;
+			isWhitesMove = before.isWhitesMove;
+			numFullMoves = before.numFullMoves;
+			numHalfMoves = before.numHalfMoves;
+			piecePromotedTo = before.piecePromotedTo;
+			whiteKing = before.whiteKing;
+			blackKing = before.blackKing;
+			zobristKey = before.zobristKey;
+			promotions = before.promotions.isEmpty() ? null : before.promotions.toArray(new String[before.promotions.size()]);
+			notationInput = before.notationInput;
+			prettyNotation = before.prettyNotation;
+			verboseNotation = before.verboseNotation;
+		}
+	}
+
+	/** Returns what it takes to turn <tt>after</tt>, this position with one move played, back into this position. */
+	Undo undoRecord(PositionState after) {
+		int count = 0;
+		for(int sq=0;sq<64;sq++) {
+			if (board[sq >>> 3][sq & 7] != after.board[sq >>> 3][sq & 7]) count++;
+		}
+		int[] squares = new int[count];
+		Piece[] pieces = new Piece[count];
+		count = 0;
+		for(int sq=0;sq<64;sq++) {
+			if (board[sq >>> 3][sq & 7] != after.board[sq >>> 3][sq & 7]) {
+				squares[count] = sq;
+				pieces[count++] = board[sq >>> 3][sq & 7];
+			}
+		}
+		return new Undo(this, squares, pieces);
+	}
+
+	/** Takes back the move recorded in <tt>undo</tt>, which must be the last one played to reach this position,
+	 * notation included. The work does not depend on how long the game is. */
+	void undo(Undo undo) {
+		for(int i=0;i<undo.squares.length;i++) {
+			board[undo.squares[i] >>> 3][undo.squares[i] & 7] = undo.pieces[i];
+		}
+		pieceLocations = new HashMap<Piece,List<String>>();
+		addPiecesToHashmap();
+		castlingRights = undo.castlingRights;
+		enpassantSquare = undo.enpassantSquare;
+		isDoublePawnPush = undo.isDoublePawnPush;
+		isPawnPromotion = undo.isPawnPromotion;
+		isWhitesMove = undo.isWhitesMove;
+		numFullMoves = undo.numFullMoves;
+		numHalfMoves = undo.numHalfMoves;
+		piecePromotedTo = undo.piecePromotedTo;
+		whiteKing = undo.whiteKing;
+		blackKing = undo.blackKing;
+		zobristKey = undo.zobristKey;
+		promotions = undo.promotions == null ? new ArrayList<String>() : new ArrayList<String>(java.util.Arrays.asList(undo.promotions));
+		notationInput = undo.notationInput;
+		prettyNotation = undo.prettyNotation;
+		verboseNotation = undo.verboseNotation;
+	}
+
+	/** Two positions are equal if they have the same pieces on the same squares, side to move,
+	 * castling rights and en passant square. Move counters and notation are ignored. */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof PositionState)) return false;
+		PositionState s = (PositionState)o;
+		if (zobristKey != s.zobristKey || isWhitesMove != s.isWhitesMove) return false;
+		if (BitboardPosition.parseCastlingRights(castlingRights) != BitboardPosition.parseCastlingRights(s.castlingRights) || !enpassantSquare.equalsIgnoreCase(s.enpassantSquare)) return false;
+		return java.util.Arrays.deepEquals(board, s.board);
+	}
+	
+	/** Returns perft(depth-1) after each legal move of the side to move, keyed by the move in UCI form (eg "e2e4").
+	 * @see BitboardPosition#divide(int) */
+	public Map<String,Long> divide(int depth) {
+		return BitboardPosition.fromPositionState(this).divide(depth);
+	}
+	
 	/** Uses the specified BoardPrinter object to return a textual string of the internal board representation. */
 	public String draw() {
 		if (getPrinter() != null) {
@@ -713,228 +741,49 @@ public class PositionState {
 	}
 	
 	public String[] generateLegalBishopMoves(boolean white) {
-		List<String> list = new ArrayList<String>();
-		
-		String[] squares = getAllSquaresWithPiece(white?Piece.WHITE_BISHOP:Piece.BLACK_BISHOP);
-		if (squares == null) return null;
-		for(String fromSquare : squares) {
-			String[] arr = generatePseudoLegalBishopMoves(fromSquare);
-			int lastDirectionBlocked = -1;
-			for(String sq : arr) {
-				if (lastDirectionBlocked == getDirectionBetween(fromSquare, sq)) continue;
-				Piece p = getPiece(sq);
-				if (p != Piece.EMPTY) {
-					lastDirectionBlocked = getDirectionBetween(fromSquare, sq);
-					if (p.isWhite() == white) continue;
-				}
-				if (isSquarePinned(fromSquare, sq, white?whiteKing:blackKing)) continue;
-				
-				boolean check = isInCheck(white);
-				if (!check || (check && moveEliminatesCheck(white, fromSquare, sq))) {
-					list.add((fromSquare + sq).toLowerCase());
-				}
-			}
-		}
-		return list.toArray(new String[list.size()]);
+		return generateLegalMoves(white, white?Piece.WHITE_BISHOP:Piece.BLACK_BISHOP);
 	}
 	
 	public String[] generateLegalKingMoves(boolean white) {
-		List<String> list = new ArrayList<String>();
-		
-		String[] squares = getAllSquaresWithPiece(white?Piece.WHITE_KING:Piece.BLACK_KING);
-		if (squares == null) return null;
-		for(String square : squares) {
-			String[] arr = generatePsuedoLegalKingMoves(square);
-			for(String adjSquare : arr) {
-				Piece p = getPiece(adjSquare);
-				if (p != Piece.EMPTY && p.isWhite() == white) continue;
-				String[] attackers = filterSquares(getAttackers(adjSquare),!white);
-				if (attackers.length == 0) {
-					list.add((square+adjSquare).toLowerCase());
-				}
-			}
-		}
-		
-		return list.toArray(new String[list.size()]);
+		return generateLegalMoves(white, white?Piece.WHITE_KING:Piece.BLACK_KING);
 	}
 	
 	public String[] generateLegalKnightMoves(boolean white) {
-		List<String> list = new ArrayList<String>();
-		
-		String[] squares = getAllSquaresWithPiece(white?Piece.WHITE_KNIGHT:Piece.BLACK_KNIGHT);
-		if (squares == null) return null;
-		for(String fromSquare : squares) {
-			String[] arr = generatePseudoLegalKnightMoves(fromSquare);
-			for(String sq : arr) {
-				Piece p = getPiece(sq);
-				//if (p == Piece.EMPTY) continue;
-				if (p != Piece.EMPTY && p.isWhite() == white) continue;
-				if (isSquarePinned(fromSquare, sq, white?whiteKing:blackKing)) continue;
-				
-				boolean check = isInCheck(white);
-				boolean moveEliminatesCheck = moveEliminatesCheck(white, fromSquare, sq);
-				if (!check || (check && moveEliminatesCheck)) {
-					list.add((fromSquare+sq).toLowerCase());
-				}
-			}
-		}
-		
-		return list.toArray(new String[list.size()]);
+		return generateLegalMoves(white, white?Piece.WHITE_KNIGHT:Piece.BLACK_KNIGHT);
 	}
 	
-	/** Gets legal moves for the given side (true = white, false = black). */
+	/** Gets legal moves for the given side (true = white, false = black), in lower case coordinate form
+	 * (eg "e2e4", or "e7e8q" for a promotion). Castling is included, as the king's two square move (eg "e1g1").<br />
+	 * The moves come from BitboardPosition's generator, which finds the checks and pins once instead of testing every move. */
 	public String[] generateLegalMoves(boolean white) {
-		return mergeArrays(new String[][] { 
-				generateLegalPawnMoves(white),
-				generateLegalRookMoves(white),
-				generateLegalKnightMoves(white),
-				generateLegalBishopMoves(white),
-				generateLegalQueenMoves(white),
-				generateLegalKingMoves(white)
-		});
+		return toBitboardPosition(white).generateLegalMoves(white);
 	}
 
-	public String[] generateLegalPawnMoves(boolean white) {
+	/** Gets the legal moves of the pieces of type <tt>piece</tt>, in the form of generateLegalMoves(boolean). */
+	private String[] generateLegalMoves(boolean white,Piece piece) {
+		BitboardPosition b = toBitboardPosition(white);
+		MoveList moves = new MoveList();
+		b.generateLegalMoves(white, moves);
 		List<String> list = new ArrayList<String>();
-		
-		String[] squares = getAllSquaresWithPiece(white?Piece.WHITE_PAWN:Piece.BLACK_PAWN);
-		String kingSquare = white?whiteKing:blackKing;
-		if (squares == null) return null;
-		for(String fromSquare : squares) {
-			
-			String file = "" + fromSquare.toUpperCase().charAt(0);
-			int rank = Integer.parseInt(""+fromSquare.charAt(1));
-			
-			// can this pawn move at all?
-			if (isSquarePinned(fromSquare, file+(white?(rank+1):(rank-1)), kingSquare)) continue;
-			
-			if (white) {
-				boolean check = isInCheck(white);
-				if (rank == 2) {
-					// If there are no pieces on the two squares in front of this pawn, we can move two squares
-					String newSquare = file + (rank+2);
-					if (getPiece(file + (rank+1)) == Piece.EMPTY && 
-						getPiece(newSquare) == Piece.EMPTY) {
-						
-						if (!check || (check && moveEliminatesCheck(white, fromSquare, newSquare))) {
-							list.add((fromSquare+newSquare).toLowerCase());
-						}
-					}
-				}
-				// If there is no piece on the square in front of this one, we can move there.
-				String newSquare = file + (rank+1);
-				if (getPiece(newSquare) == Piece.EMPTY) {
-					if (!check || (check && moveEliminatesCheck(white, fromSquare, newSquare))) {
-						list.add((fromSquare+newSquare).toLowerCase());
-					}
-				}
-				
-				String[] arr = new String[] { ((char)(file.charAt(0)-1)) + "" + (rank+1),((char)(file.charAt(0)+1)) + "" + (rank+1) };
-				//System.out.println(java.util.Arrays.toString(arr));
-				for(int i=0;i<arr.length;i++) {
-					if (!isValidSquare(arr[i])) continue;
-					if (getPiece(arr[i]) == Piece.EMPTY) continue;
-					if (!check || (check && moveEliminatesCheck(white, fromSquare, arr[i]))) {
-						list.add((fromSquare+arr[i]).toLowerCase());
-						System.out.println("Added: " + list.get(list.size()-1));
-					}
-				}
-			} else if (!white) {
-				boolean check = isInCheck(white);
-				if (rank == 7) {
-					// If there are no pieces on the two squares in front of this pawn, we can move two squares
-					String newSquare = file + (rank-2);
-					if (getPiece(file + (rank-1)) == Piece.EMPTY && 
-						getPiece(newSquare) == Piece.EMPTY) {
-						if (!check || (check && moveEliminatesCheck(white, fromSquare, newSquare))) {
-							list.add((fromSquare+newSquare).toLowerCase());
-						}
-					}
-				}
-				String newSquare = file + (rank-1);
-				Piece p = getPiece(newSquare); 
-				if (p == Piece.EMPTY) {
-					if (!check || (check && moveEliminatesCheck(white, fromSquare, newSquare))) {
-						list.add((fromSquare+newSquare).toLowerCase());
-					}
-				}
-				
-				/*boolean check = isInCheck(white);
-				String[] arr = new String[] { ((char)(file.charAt(0)-1)) + "" + (rank-1),((char)(file.charAt(0)+1)) + "" + (rank-1) };
-				for(int i=0;i<arr.length;i++) {
-					if (!isValidSquare(arr[i])) continue;
-					if (getPiece(arr[i]) == Piece.EMPTY) continue;
-					if (!check || (check && moveEliminatesCheck(white, fromSquare, arr[i]))) {
-						list.add((fromSquare+arr[i]).toLowerCase());
-					}
-				}*/
-			}
+		for(int i=0;i<moves.size();i++) {
+			int move = moves.get(i);
+			if (b.getPiece(PackedMove.from(move)) == piece) list.add(PackedMove.toUci(move));
 		}
-		
 		return list.toArray(new String[list.size()]);
 	}
 
+	public String[] generateLegalPawnMoves(boolean white) {
+		return generateLegalMoves(white, white?Piece.WHITE_PAWN:Piece.BLACK_PAWN);
+	}
+
 	public String[] generateLegalQueenMoves(boolean white) {
-		/*String[] arr1 = generateLegalBishopMoves(white);
-		String[] arr2 = generateLegalRookMoves(white);
-		
-		if (arr1 == null && arr2 != null) { 
-			return arr2;
-		} else if (arr2 == null && arr1 != null) { 
-			return arr1;
-		} else {
-			return mergeArrays(arr1,arr2);
-		}*/
-		
-		
-		List<String> list = new ArrayList<String>();
-		
-		String[] squares = getAllSquaresWithPiece(white?Piece.WHITE_QUEEN:Piece.BLACK_QUEEN);
-		if (squares == null) return null;
-		for(String fromSquare : squares) {
-			String[] arr = generatePseudoLegalQueenMoves(fromSquare);
-			List<Integer> directionsBlocked = new ArrayList<Integer>(8);
-			for(String sq : arr) {
-				if (directionsBlocked.contains(getDirectionBetween(fromSquare, sq))) continue;
-				Piece p = getPiece(sq);
-				if (p != Piece.EMPTY) {
-					directionsBlocked.add(getDirectionBetween(fromSquare, sq));
-					if (p.isWhite() == white) continue;
-				}
-				if (isSquarePinned(fromSquare, sq, white?whiteKing:blackKing)) continue;
-				boolean check = isInCheck(white);
-				if (!check || (check && moveEliminatesCheck(white, fromSquare, sq))) {
-					list.add((fromSquare + sq).toLowerCase());
-				}
-			}
-		}
-		return list.toArray(new String[list.size()]);
+		return generateLegalMoves(white, white?Piece.WHITE_QUEEN:Piece.BLACK_QUEEN);
 	}
+	
 	public String[] generateLegalRookMoves(boolean white) {
-		List<String> list = new ArrayList<String>();
-		
-		String[] squares = getAllSquaresWithPiece(white?Piece.WHITE_ROOK:Piece.BLACK_ROOK);
-		if (squares == null) return null;
-		for(String fromSquare : squares) {
-			String[] arr = generatePseudoLegalRookMoves(fromSquare);
-			int lastDirectionBlocked = -1;
-			for(String sq : arr) {
-				if (lastDirectionBlocked == getDirectionBetween(fromSquare, sq)) continue;
-				Piece p = getPiece(sq);
-				if (p != Piece.EMPTY) {
-					lastDirectionBlocked = getDirectionBetween(fromSquare, sq);
-					if (p.isWhite() == white) continue;
-				}
-				if (isSquarePinned(fromSquare, sq, white?whiteKing:blackKing)) continue;
-				boolean check = isInCheck(white);
-				if (!check || (check && moveEliminatesCheck(white, fromSquare, sq))) {
-					list.add((fromSquare + sq).toLowerCase());
-				}
-			}
-		}
-		return list.toArray(new String[list.size()]);
+		return generateLegalMoves(white, white?Piece.WHITE_ROOK:Piece.BLACK_ROOK);
 	}
-
+	
 	public String[] generatePsuedoLegalMoves(boolean white) {
 		/* DEVELOPER NOTE: 
 		 * 
@@ -1098,7 +947,12 @@ public class PositionState {
 	public Piece[][] getBoard() {
 		return board;
 	}
-	
+
+	/** Returns the castling rights in FEN form (eg "KQkq"), or an empty string if no one can castle. */
+	public String getCastlingRights() {
+		return castlingRights;
+	}
+
 	protected int getColorBoardStrength(boolean white) {
 		int strength = 0;
 		Piece[] arr;
@@ -1150,7 +1004,12 @@ public class PositionState {
 	public int getDoublePawnPushFile() {
 		return isDoublePawnPush;
 	}
-	
+
+	/** Returns the en passant target square (eg "e3"), or "-" if there is none. */
+	public String getEnpassantSquare() {
+		return enpassantSquare;
+	}
+
 	/** not yet implemented completely */
 	public String getFEN() {
 		StringBuilder b = new StringBuilder();
@@ -1188,7 +1047,24 @@ public class PositionState {
 	public String getNotationInput() {
 		return notationInput;
 	}
+
+	/** Returns the status of the game with <tt>white</tt> to move: checkmate, stalemate, a draw by insufficient material
+	 * or the seventy-five or fifty move rule, or ONGOING. It takes one check for a legal move and one for check.
+	 * Repetitions are reported by Board.getGameStatus(), which knows the earlier positions. */
+	public GameStatus getGameStatus(boolean white) {
+		return toBitboardPosition(white).getGameStatus(white);
+	}
 	
+	/** num of full moves, as counted internally (see getFEN() for the FEN move number). */
+	public int getNumFullMoves() {
+		return numFullMoves;
+	}
+
+	/** num half moves since last pawn move */
+	public int getNumHalfMoves() {
+		return numHalfMoves;
+	}
+
 	/** Returns the piece on the specified square */
 	public Piece getPiece(String square) {
 		if (square.length() != 2) throw new IllegalArgumentException(square);
@@ -1347,85 +1223,33 @@ public class PositionState {
 		return getColorBoardStrength(true);
 	}
 	
-	/** Returns if <tt>color</tt> is checkmated.<br />
-	 * implementation not yet complete. */
+	/** Returns the Zobrist key of this position, kept up to date by placePiece(), makeMove() and castle().
+	 * Equal positions have equal keys, and the key is the same as BitboardPosition.getZobristKey() for the same position. */
+	public long getZobristKey() {
+		return zobristKey;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int)(zobristKey ^ (zobristKey >>> 32));
+	}
+	
+	/** Returns if <tt>white</tt> is checkmated: in check with no legal move. */
 	public boolean isCheckmate(boolean white) {
-		// not a check so it can't be a checkmate
-		//System.out.println("color = " + white);
-		if (!isInCheck(white)) return false;
- 		
-		String[] arr = getAllSquaresWithPiece(white?Piece.WHITE_KING:Piece.BLACK_KING);
-		assert arr.length == 1;
-		String kingsquare = arr[0]; // we know there is only one king unless this is some weird variant
-		
-		//System.out.println("can we move");
-		String[] squares = getAdjacentSquares(kingsquare);
-		for(String s : squares) {
-			Piece p = getPiece(s);
-			//if (p == Piece.EMPTY) continue;
-			
-			// if white and black piece OR black and white piece
-			if (p == Piece.EMPTY || (white && !Piece.isWhitePiece(p.getAbbreviation())) || (!white && Piece.isWhitePiece(p.getAbbreviation()))) {
-				// is the piece on this square protected?
-				String[] tmp = getAttackers(s);
-				String[] defenders = filterSquares(tmp,!white);
-				if (defenders.length > 0) continue;
-				
-				// This piece/square is undefended, it's not checkmate since we can take it
-				return false;
-			}
-		}
-		
-		// 1. find all squares (with pieces of our color) that are attacking the king
-		// 2. find all squares between each piece and the king
-		// 3. see if any piece can block the check [ or capture the piece ]
-		//System.out.println("can we block");
-		String[] attackers = filterSquares(getAttackers(kingsquare),!white);
-		for(String from : attackers) {
-			squares = getSquaresBetween(from,kingsquare);
-			if (squares.length == 0) continue; // this is an adjacent square and cannot be blocked
-			for(String s : squares) {
-				String[] mypieces = filterSquares(getAttackers(s),white);
-				if (mypieces.length > 0) continue;
-				
-				// a piece can move here to block the check, it's not checkmate
-				return false;
-			}
-		}
-		
-		//System.out.println("can we capture");
-		for(String s : attackers) {
-			// find squares with the same color as the king
-			String[] enemypieces = filterSquares(getAttackers(s),white);
-			//System.out.println(java.util.Arrays.toString(enemypieces));
-			for(String from : enemypieces) {
-				// see if they can capture
-				if (isLegalMove(from,s)) { 
-					System.out.println("legal move, not checkmate"); 
-					return false;
-				}
-			}
-		}
-		
-		/*String[] attackers = getAttackers(kingsquare);
-		for(String s : attackers) {
-			Piece p = getPiece(s);
-			if (white && !Piece.isWhitePiece(p.getAbbreviation())) {
-				return true;
-			} else if (!white && Piece.isWhitePiece(p.getAbbreviation())) {
-				return true;
-			}
-		}*/
-		return true;
+		return isInCheck(white) && !canSideMove(white);
 	}
 	
 	public boolean isDoublePawnPush() {
 		return isDoublePawnPush > -1;
 	}
 	
-	/** Returns true if the game is a stalemate or one side has checkmate */
+	/** Returns true if the game is over for the side to move, as isWhiteToMove() tells it (see getGameStatus(boolean)).
+	 * A draw that has to be claimed first (the fifty move rule) does not end the game.
+	 * @deprecated the side to move is only known for positions parsed from FEN or played by a Board;
+	 * use getGameStatus(boolean), or Board.getGameStatus(), which also knows about repetitions. */
+	@Deprecated
 	public boolean isGameOver() {
-		return isCheckmate(true) || isCheckmate(false) || isStalemate();
+		return getGameStatus(isWhiteToMove()).isGameOver();
 	}
 	
 	/** Returns if the given side is in check.
@@ -1451,16 +1275,8 @@ public class PositionState {
 	}
 	
 	public boolean isLegalBishopMove(String from,String to) {
-		from = from.toUpperCase();
-		to = to.toUpperCase();
-		if (!isDiagonal(from, to)) return false;
-		
-		String[] arr = getSquaresBetween(from, to);
-		for(String sq : arr) {
-			//System.out.println("pt: "+convertFromPointToSquare(p));
-			if (getPiece(sq) != Piece.EMPTY) return false;
-		}
-		return true;
+		int fromSq = Bitboards.squareIndex(from);
+		return (Bitboards.bishopAttacks(fromSq, occupied) & Bitboards.bit(Bitboards.squareIndex(to))) != 0;
 	}
 	
 	/** This method REQUIRES that there actually is a king on the <tt>from</tt> square!<br />
@@ -1619,16 +1435,8 @@ public class PositionState {
 	}
 	
 	public boolean isLegalRookMove(String from,String to) {
-		from = from.toUpperCase();
-		to = to.toUpperCase();
-		if (!isSameRankOrFile(from, to)) return false;
-		//System.err.println(from + " " + to);
-		String[] arr = getSquaresBetween(from, to);
-		for(String square : arr) {
-			//System.err.println("sq:"+square);
-			if (getPiece(square) != Piece.EMPTY) return false;
-		}
-		return true;
+		int fromSq = Bitboards.squareIndex(from);
+		return (Bitboards.rookAttacks(fromSq, occupied) & Bitboards.bit(Bitboards.squareIndex(to))) != 0;
 	}
 	
 	/** even if a pawn can't go to a square, it can still be attacking it */
@@ -1636,7 +1444,7 @@ public class PositionState {
 		if (!isAdjacentSquare(from, to)) return false;
 		
 		int direction = getDirectionBetween(from, to);
-		System.out.println(direction);
+		//System.out.println(direction);
 		if (white && (direction == 0xF || direction == 0x11)) {
 			return true;
 		} else if (!white && (direction == -0xF || direction == -0x11)) {
@@ -1705,18 +1513,33 @@ public class PositionState {
 		return false;
 	}
 	
-	/** */
+	/** Returns if either side would be stalemated if it were its move.
+	 * @deprecated a position is only a stalemate for the side to move; use isStalemate(boolean) or getGameStatus(boolean). */
+	@Deprecated
 	public boolean isStalemate() {
-		//return generateLegalMoves(true).length == 0 || generateLegalMoves(false).length == 0;
-		return !canSideMove(true) || !canSideMove(false);
+		return isStalemate(true) || isStalemate(false);
+	}
+	
+	/** Returns if <tt>white</tt>, to move, is stalemated: not in check and without a legal move. */
+	public boolean isStalemate(boolean white) {
+		return !isInCheck(white) && !canSideMove(white);
 	}
 	
 	public boolean isWhitesMove() {
 		return isWhitesMove;
 	}
 
+	/** Returns if it is white's move. isWhitesMove() is the side to move in the starting position and in positions
+	 * parsed from FEN, but the side that made the last move in positions a Board has played a move into. */
+	public boolean isWhiteToMove() {
+		return prettyNotation == null || prettyNotation.equals("none") ? isWhitesMove : !isWhitesMove;
+	}
+
 	protected void makeMove(String from,String to,String promotionPiece) {
 		Piece p = getPiece(from);
+		boolean isCapture = getPiece(to) != Piece.EMPTY;
+		// p becomes the promoted piece further down, so remember the pawn move for the half move clock
+		boolean isPawnMove = p == Piece.WHITE_PAWN || p == Piece.BLACK_PAWN;
 		from = from.toUpperCase();
 		to = to.toUpperCase();
 		
@@ -1724,6 +1547,7 @@ public class PositionState {
 		isDoublePawnPush = -1;
 		
 		String oldEp = enpassantSquare;
+		String oldCastlingRights = castlingRights;
 		
 		enpassantSquare = "-";
 		if (isSameFile(from, to)) {
@@ -1780,6 +1604,8 @@ public class PositionState {
 			blackKing = to;
 			castlingRights = castlingRights.replaceFirst("k","").replaceFirst("q","");
 		}
+		zobristKey ^= Zobrist.castling(oldCastlingRights) ^ Zobrist.castling(castlingRights)
+			^ Zobrist.enPassant(oldEp) ^ Zobrist.enPassant(enpassantSquare);
 
 		String promotionVerbose = ((p==Piece.WHITE_PAWN || p==Piece.BLACK_PAWN) && promotionPiece!=null?"="+promotionPiece:"");
 		setVerboseNotation(p.getAbbreviation().toUpperCase()+"/"+from+"-"+to+promotionVerbose);
@@ -1828,27 +1654,43 @@ public class PositionState {
 //		String[] arr = pieceLocations.get(p).toArray(new String[pieceLocations.get(p).size()]);
 //		System.err.println(java.util.Arrays.toString(arr));
 		
-		// this was NOT a pawn move, so we need to increment the number of half moves
-		if (p != Piece.WHITE_PAWN && p != Piece.BLACK_PAWN) { numHalfMoves++; } else { numHalfMoves = 0; }
+		// this was NOT a pawn move or a capture, so we need to increment the number of half moves
+		if (!isPawnMove && !isCapture) { numHalfMoves++; } else { numHalfMoves = 0; }
 		// we need to tell the board whether this move was made by white
 		//isWhitesMove = !isWhitesMove;//!Piece.isWhitePiece(p.getAbbreviation());
 		
 	}
 
+	/** Returns if <tt>white</tt> is out of check after moving the piece on <tt>fromSquare</tt> to <tt>toSquare</tt>.<br />
+	 * The move is tried on a bitboard copy of this position with doMove()/undoMove(), so this position is never deep copied. */
 	public boolean moveEliminatesCheck(boolean white,String fromSquare,String toSquare) {
 		//if (!isInCheck(white)) return false;
 		if (getPiece(fromSquare) == Piece.EMPTY) return false;
-		//System.out.println(java.util.Arrays.deepToString(getBoard()));
-		PositionState state = deepCopy();
-		state.makeMove(fromSquare, toSquare, null);
-		//System.out.println(java.util.Arrays.deepToString(state.getBoard()));
-		
-		//state.setPrinter(DefaultPrinter.getSingletonInstance());
-		//System.out.println(state.draw());
-		boolean isInCheck = state.isInCheck(white);
+		BitboardPosition b = BitboardPosition.fromPositionState(this);
+		int from = Bitboards.squareIndex(fromSquare), to = Bitboards.squareIndex(toSquare);
+		int rank = Bitboards.rankOf(to);
+		boolean promotion = (rank == 0 || rank == 7) && (b.getPiece(from) == Piece.WHITE_PAWN || b.getPiece(from) == Piece.BLACK_PAWN);
+		b.doMove(b.toPackedMove(from, to, promotion ? BitboardPosition.QUEEN : 0));
+		boolean isInCheck = b.isInCheck(white);
+		b.undoMove();
 		return !isInCheck;
 	}
 
+	/** Returns a bitboard copy of this position with <tt>white</tt> to move, so an en passant capture is only
+	 * offered to the side that can make it. */
+	private BitboardPosition toBitboardPosition(boolean white) {
+		BitboardPosition b = BitboardPosition.fromPositionState(this);
+		b.setWhiteToMove(white);
+		return b;
+	}
+
+	/** Counts the leaf nodes of the legal move tree <tt>depth</tt> plies deep from this position, for the side to move
+	 * given by isWhitesMove(). The tree is walked on a BitboardPosition copy, so this position is not changed.
+	 * @see BitboardPosition#perft(int) */
+	public long perft(int depth) {
+		return BitboardPosition.fromPositionState(this).perft(depth);
+	}
+	
 	/** Adds the specified piece to the board at the given square. */
 	public void placePiece(Piece piece,String square) {
 		square = square.toUpperCase();
@@ -1861,6 +1703,12 @@ public class PositionState {
 		}
 		
 		board[p.y][p.x] = piece;
+		zobristKey ^= Zobrist.piece(pieceOnSquare, p.y*8+p.x) ^ Zobrist.piece(piece, p.y*8+p.x);
+		if (piece == Piece.EMPTY) {
+			occupied &= ~Bitboards.bit(p.y*8+p.x);
+		} else {
+			occupied |= Bitboards.bit(p.y*8+p.x);
+		}
 		if (pieceLocations.containsKey(piece)) {
 			if (!pieceLocations.get(piece).contains(square)) {
 				pieceLocations.get(piece).add(square);
@@ -1878,9 +1726,12 @@ public class PositionState {
 	
 	public void setBoard(Piece[][] board) {
 		this.board = board;
+		updateOccupied();
+		zobristKey = computeZobristKey();
 	}
 
 	public void setCastlingRights(String castlingRights) {
+		zobristKey ^= Zobrist.castling(this.castlingRights) ^ Zobrist.castling(castlingRights);
 		this.castlingRights = castlingRights;
 	}
 
@@ -1905,6 +1756,17 @@ public class PositionState {
 	}
 	
 	protected void setWhitesMove(boolean isWhitesMove) {
+		if (this.isWhitesMove != isWhitesMove) zobristKey ^= Zobrist.BLACK_TO_MOVE;
 		this.isWhitesMove = isWhitesMove;
 	}
+	
+	/** Rebuilds the occupancy bitboard from the Piece[][] board. */
+	private void updateOccupied() {
+		occupied = 0L;
+		for(int i=0;i<board.length;i++) {
+			for(int j=0;j<board[i].length;j++) {
+				if (board[i][j] != null && board[i][j] != Piece.EMPTY) occupied |= Bitboards.bit(i*8+j);
+			}
+		}
+	}
 }
@@ -0,0 +1,92 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board;
+
+/** Random keys for 64-bit Zobrist hashing of a position.<br />
+ * A position key is the XOR of one key per piece on a square, the key of the castling rights,
+ * the key of the en passant file (if there is an en passant square) and BLACK_TO_MOVE if it is black's move.
+ * The keys come from a generator with a fixed seed, so a position has the same key in every JVM
+ * and in both PositionState and BitboardPosition.
+ * @see http://chessprogramming.wikispaces.com/Zobrist+Hashing */
+public final class Zobrist {
+	/** PIECE_SQUARE[Piece.ordinal()][square], for the twelve non-empty pieces */
+	private static final long[][] PIECE_SQUARE = new long[12][64];
+	/** indexed by a combination of the BitboardPosition castling flags; CASTLING[0] is 0 */
+	private static final long[] CASTLING = new long[16];
+	private static final long[] EN_PASSANT_FILE = new long[8];
+	public static final long BLACK_TO_MOVE;
+
+	static {
+		long seed = 0x6A09E667F3BCC908L;
+		for(int p=0;p<12;p++) {
+			for(int sq=0;sq<64;sq++) {
+				seed += 0x9E3779B97F4A7C15L;
+				PIECE_SQUARE[p][sq] = mix(seed);
+			}
+		}
+		for(int i=1;i<CASTLING.length;i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			CASTLING[i] = mix(seed);
+		}
+		for(int i=0;i<EN_PASSANT_FILE.length;i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			EN_PASSANT_FILE[i] = mix(seed);
+		}
+		seed += 0x9E3779B97F4A7C15L;
+		BLACK_TO_MOVE = mix(seed);
+	}
+
+	private Zobrist() { }
+
+	/** splitmix64 finalizer */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/** Key of the castling rights, given as a combination of the BitboardPosition castling flags. */
+	public static long castling(int rights) {
+		return CASTLING[rights & 0xF];
+	}
+
+	/** Key of the castling rights, given in FEN form (eg "KQkq"). */
+	public static long castling(String rights) {
+		return CASTLING[BitboardPosition.parseCastlingRights(rights)];
+	}
+
+	/** Key of the en passant file (0-7), or 0 if <tt>file</tt> is -1. */
+	public static long enPassant(int file) {
+		return file < 0 ? 0L : EN_PASSANT_FILE[file];
+	}
+
+	/** Key of the en passant square in FEN form (eg "e3"), or 0 if it is "-". */
+	public static long enPassant(String square) {
+		if (square == null || square.length() != 2) return 0L;
+		int sq = Bitboards.squareIndex(square.charAt(0), square.charAt(1));
+		return sq < 0 ? 0L : enPassant(sq & 7);
+	}
+
+	/** Key of <tt>piece</tt> standing on the 0-63 square <tt>sq</tt>. Piece.EMPTY (or null) has no key (0). */
+	public static long piece(Piece piece,int sq) {
+		return piece == null || piece == Piece.EMPTY ? 0L : PIECE_SQUARE[piece.ordinal()][sq];
+	}
+
+	/** Same as piece(Piece,int) but takes the piece ordinal, as stored in the BitboardPosition mailbox. */
+	static long piece(int piece,int sq) {
+		return piece >= 12 ? 0L : PIECE_SQUARE[piece][sq];
+	}
+}
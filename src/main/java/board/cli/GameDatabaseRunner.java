@@ -0,0 +1,133 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.cli;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import board.BitboardPosition;
+import board.MoveStatus;
+import board.db.GameDatabase;
+import board.db.GameDatabaseWriter;
+import board.pgn.PgnImporter;
+import board.pgn.PgnListener;
+
+/** Builds a GameDatabase from a PGN file, or reads every game of one, and prints how long it took.<br /><br />
+ * Usage:<br />
+ * <tt>GameDatabaseRunner -import [-threads n] pgnfile dbfile</tt> - imports the PGN file with PgnImporter and writes the database.<br />
+ * <tt>GameDatabaseRunner dbfile</tt> - replays every game of the database. The printed checksum (of every position key)
+ * is the one PgnImportRunner prints for the PGN file it was imported from. */
+public class GameDatabaseRunner {
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean importing = false;
+		String pgn = null;
+		String db = null;
+		for(int i=0;i<args.length;i++) {
+			if (args[i].equals("-threads") && i+1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-import")) {
+				importing = true;
+			} else if (importing && pgn == null) {
+				pgn = args[i];
+			} else {
+				db = args[i];
+			}
+		}
+		if (db == null) {
+			System.out.println("Usage: GameDatabaseRunner -import [-threads n] pgnfile dbfile");
+			System.out.println("       GameDatabaseRunner dbfile");
+			return;
+		}
+		if (importing) {
+			importPgn(new File(pgn), new File(db), threads);
+		} else {
+			scan(new File(db));
+		}
+	}
+	
+	private static void importPgn(File pgn,File db,int threads) throws IOException {
+		PgnImporter importer = new PgnImporter(threads);
+		InputStream in = new BufferedInputStream(new FileInputStream(pgn));
+		GameDatabaseWriter writer = new GameDatabaseWriter(db);
+		long start = System.nanoTime();
+		long games;
+		try {
+			games = importer.importGames(in, writer);
+		} finally {
+			writer.close();
+			in.close();
+			importer.shutdown();
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.println(games + " games in " + String.format("%.3f", nanos/1e9) + "s with " + threads + " threads");
+		System.out.println(pgn.length() + " bytes of PGN, " + db.length() + " bytes of database (" +
+			String.format("%.1f", db.length()*100.0/Math.max(1, pgn.length())) + "%)");
+	}
+	
+	private static void scan(File db) throws IOException {
+		final long startingKey = BitboardPosition.getStartingPosition().getZobristKey();
+		final long[] stats = new long[3]; // plies, invalid games, checksum
+		GameDatabase database = new GameDatabase(db);
+		long start = System.nanoTime();
+		try {
+			database.readAll(new PgnListener() {
+				private String fen;
+				
+				public void startGame() {
+					fen = null;
+				}
+				
+				public void tag(String name,String value) {
+					if (name.equals("FEN")) fen = value;
+				}
+				
+				public void move(BitboardPosition position,int move) {
+					stats[0]++;
+					stats[2] += position.getZobristKey();
+				}
+				
+				public void illegalMove(BitboardPosition position,String move,MoveStatus status) {
+					stats[1]++;
+				}
+				
+				public void endGame(BitboardPosition position,String result) {
+					// add the key of the starting position, as PgnGame.getKey(0)
+					if (position.getUndoCount() == 0) {
+						stats[2] += position.getZobristKey();
+					} else {
+						stats[2] += fen == null ? startingKey : BitboardPosition.parseFromFen(fen).getZobristKey();
+					}
+				}
+			});
+		} finally {
+			database.close();
+		}
+		long nanos = System.nanoTime() - start;
+		long games = database.size();
+		System.out.println(games + " games, " + stats[0] + " plies, " + stats[1] + " with illegal moves, checksum " +
+			Long.toHexString(stats[2]));
+		System.out.println(String.format("%.3f", nanos/1e9) + "s (" + (nanos == 0 ? 0 : (long)(games*1e9/nanos)) + " games/s, " +
+			(nanos == 0 ? 0 : (long)(stats[0]*1e9/nanos)) + " plies/s)");
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.cli;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+import board.BitboardPosition;
+import board.ParallelPerft;
+
+/** Runs perft over a list of positions and compares the node counts to the expected ones.<br />
+ * Each line of the input is a FEN followed by the expected counts, eg<br />
+ * <tt>rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 ;D1 20 ;D2 400 ;D3 8902</tt><br />
+ * Empty lines and lines starting with # are skipped. Without a file the bundled suite (board/perftsuite.epd) is used.<br /><br />
+ * Usage:<br />
+ * <tt>PerftRunner [-depth n] [-threads n] [-hash mb] [file]</tt> - runs every expected count up to depth n (default 4).
+ * A position whose counts are all deeper than n runs its shallowest one. With -threads the counts are computed by
+ * ParallelPerft with a shared hash table of the given size, and the node rate of each thread is printed at the end.<br />
+ * <tt>PerftRunner -divide n fen</tt> - prints the node count below each root move. */
+public class PerftRunner {
+	private static final String SUITE = "/board/perftsuite.epd";
+	private static final int DEFAULT_DEPTH = 4;
+
+	private int maxDepth = DEFAULT_DEPTH;
+	private ParallelPerft parallel;
+	private int passed;
+	private int failed;
+	private long totalNodes;
+	private long totalNanos;
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		PerftRunner runner = new PerftRunner();
+		String file = null;
+		int threads = 0;
+		int hash = ParallelPerft.DEFAULT_HASH_MB;
+		for(int i=0;i<args.length;i++) {
+			if (args[i].equals("-depth") && i+1 < args.length) {
+				runner.maxDepth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads") && i+1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-hash") && i+1 < args.length) {
+				hash = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-divide") && i+2 < args.length) {
+				int depth = Integer.parseInt(args[++i]);
+				StringBuilder fen = new StringBuilder();
+				for(i=i+1;i<args.length;i++) fen.append(args[i]).append(' ');
+				divide(fen.toString().trim(),depth);
+				return;
+			} else {
+				file = args[i];
+			}
+		}
+
+		if (threads > 0) runner.parallel = new ParallelPerft(threads,hash);
+		InputStream in = file == null ? PerftRunner.class.getResourceAsStream(SUITE) : new FileInputStream(file);
+		if (in == null) throw new IOException("Could not find " + SUITE);
+		BufferedReader rdr = new BufferedReader(new InputStreamReader(in,"UTF-8"));
+		try {
+			String line;
+			while((line = rdr.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				runner.run(line);
+			}
+		} finally {
+			rdr.close();
+			if (runner.parallel != null) runner.parallel.shutdown();
+		}
+
+		System.out.println(runner.passed + " passed, " + runner.failed + " failed, " +
+			runner.totalNodes + " nodes in " + formatSeconds(runner.totalNanos) + "s (" +
+			nodesPerSecond(runner.totalNodes,runner.totalNanos) + " nps)");
+		if (runner.parallel != null) {
+			for(ParallelPerft.WorkerStats s : runner.parallel.getWorkerStats()) {
+				System.out.println("  " + s);
+			}
+		}
+		if (runner.failed > 0) System.exit(1);
+	}
+
+	private static void divide(String fen,int depth) {
+		BitboardPosition b = BitboardPosition.parseFromFen(fen);
+		long start = System.nanoTime();
+		Map<String,Long> map = b.divide(depth);
+		long nanos = System.nanoTime() - start;
+		long nodes = 0;
+		for(Map.Entry<String,Long> e : map.entrySet()) {
+			System.out.println(e.getKey() + ": " + e.getValue());
+			nodes += e.getValue();
+		}
+		System.out.println();
+		System.out.println("Moves: " + map.size());
+		System.out.println("Nodes: " + nodes + " in " + formatSeconds(nanos) + "s (" + nodesPerSecond(nodes,nanos) + " nps)");
+	}
+
+	private static String formatSeconds(long nanos) {
+		return String.format("%.3f", nanos/1e9);
+	}
+
+	private static long nodesPerSecond(long nodes,long nanos) {
+		return nanos == 0 ? 0 : (long)(nodes*1e9/nanos);
+	}
+
+	/** Runs one line of the suite: the FEN followed by ";D<depth> <nodes>" entries. */
+	private void run(String line) {
+		String[] arr = line.split(";");
+		String fen = arr[0].trim();
+		System.out.println(fen);
+
+		int shallowest = -1;
+		boolean ran = false;
+		for(int i=1;i<arr.length;i++) {
+			String[] entry = arr[i].trim().split(" +");
+			int depth = Integer.parseInt(entry[0].substring(1));
+			if (depth <= maxDepth) {
+				run(fen,depth,Long.parseLong(entry[1]));
+				ran = true;
+			} else if (shallowest == -1 || depth < Integer.parseInt(arr[shallowest].trim().split(" +")[0].substring(1))) {
+				shallowest = i;
+			}
+		}
+		if (!ran && shallowest != -1) {
+			String[] entry = arr[shallowest].trim().split(" +");
+			run(fen,Integer.parseInt(entry[0].substring(1)),Long.parseLong(entry[1]));
+		}
+	}
+
+	private void run(String fen,int depth,long expected) {
+		BitboardPosition b = BitboardPosition.parseFromFen(fen);
+		long start = System.nanoTime();
+		long nodes = parallel == null ? b.perft(depth) : parallel.perft(b,depth);
+		long nanos = System.nanoTime() - start;
+		totalNodes += nodes;
+		totalNanos += nanos;
+
+		boolean ok = nodes == expected;
+		if (ok) passed++; else failed++;
+		System.out.println("  D" + depth + " " + nodes + (ok ? " OK" : " FAILED, expected " + expected) +
+			" " + formatSeconds(nanos) + "s (" + nodesPerSecond(nodes,nanos) + " nps)");
+	}
+}
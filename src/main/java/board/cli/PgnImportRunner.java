@@ -0,0 +1,92 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.cli;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import board.pgn.GameSink;
+import board.pgn.PgnGame;
+import board.pgn.PgnImporter;
+
+/** Imports a PGN file with PgnImporter and prints how long it took.<br /><br />
+ * Usage:<br />
+ * <tt>PgnImportRunner [-threads n] [-batches n] [-batchsize bytes] [-unordered] [-errors] file</tt><br />
+ * Runs with one thread per processor by default. With -errors every game with an illegal move is printed.
+ * The printed checksum (of every position key) is the same whatever the thread count. */
+public class PgnImportRunner {
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int batches = -1;
+		int batchSize = PgnImporter.DEFAULT_BATCH_SIZE;
+		boolean ordered = true;
+		boolean printErrors = false;
+		String file = null;
+		for(int i=0;i<args.length;i++) {
+			if (args[i].equals("-threads") && i+1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-batches") && i+1 < args.length) {
+				batches = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-batchsize") && i+1 < args.length) {
+				batchSize = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-unordered")) {
+				ordered = false;
+			} else if (args[i].equals("-errors")) {
+				printErrors = true;
+			} else {
+				file = args[i];
+			}
+		}
+		if (file == null) {
+			System.out.println("Usage: PgnImportRunner [-threads n] [-batches n] [-batchsize bytes] [-unordered] [-errors] file");
+			return;
+		}
+		final boolean errors = printErrors;
+		
+		final long[] stats = new long[3]; // plies, invalid games, checksum
+		PgnImporter importer = new PgnImporter(threads, batches < 0 ? threads*4 : batches, batchSize, ordered);
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		long start = System.nanoTime();
+		long games;
+		try {
+			games = importer.importGames(in, new GameSink() {
+				public void accept(PgnGame game) {
+					stats[0] += game.getPlyCount();
+					for(int i=0;i<=game.getPlyCount();i++) stats[2] += game.getKey(i);
+					if (!game.isValid()) {
+						stats[1]++;
+						if (errors) System.out.println(game + ": " + game.getError() + " " + game.getErrorStatus());
+					}
+				}
+			});
+		} finally {
+			in.close();
+			importer.shutdown();
+		}
+		long nanos = System.nanoTime() - start;
+		
+		System.out.println(games + " games, " + stats[0] + " plies, " + stats[1] + " with illegal moves, checksum " +
+			Long.toHexString(stats[2]));
+		System.out.println(String.format("%.3f", nanos/1e9) + "s with " + threads + " threads (" +
+			(nanos == 0 ? 0 : (long)(games*1e9/nanos)) + " games/s, " + (nanos == 0 ? 0 : (long)(stats[0]*1e9/nanos)) + " plies/s)");
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.cli;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import board.BitboardPosition;
+import board.db.GameDatabase;
+import board.db.PositionIndex;
+import board.db.PositionIndexWriter;
+import board.pgn.PgnGame;
+import board.pgn.PgnImporter;
+
+/** Builds a PositionIndex, or finds the games that reached a position in one.<br /><br />
+ * Usage:<br />
+ * <tt>PositionIndexRunner -build [-threads n] source indexfile</tt> - indexes a PGN file (ending in .pgn) with
+ * PgnImporter, or a GameDatabase file with PositionIndexWriter.build(). The game numbers are the same either way.<br />
+ * <tt>PositionIndexRunner [-db dbfile] [-max n] indexfile fen</tt> - prints the games (at most n, default 20) that
+ * reached the position, with their players and result when the database they came from is given. */
+public class PositionIndexRunner {
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int max = 20;
+		boolean build = false;
+		String db = null;
+		String source = null;
+		String index = null;
+		StringBuilder fen = new StringBuilder();
+		for(int i=0;i<args.length;i++) {
+			if (args[i].equals("-threads") && i+1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-max") && i+1 < args.length) {
+				max = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-db") && i+1 < args.length) {
+				db = args[++i];
+			} else if (args[i].equals("-build")) {
+				build = true;
+			} else if (build && source == null) {
+				source = args[i];
+			} else if (index == null) {
+				index = args[i];
+			} else {
+				fen.append(args[i]).append(' ');
+			}
+		}
+		if (index == null || (!build && fen.length() == 0)) {
+			System.out.println("Usage: PositionIndexRunner -build [-threads n] source indexfile");
+			System.out.println("       PositionIndexRunner [-db dbfile] [-max n] indexfile fen");
+			return;
+		}
+		if (build) {
+			build(new File(source), new File(index), threads);
+		} else {
+			find(new File(index), db == null ? null : new File(db), fen.toString().trim(), max);
+		}
+	}
+	
+	private static void build(File source,File index,int threads) throws IOException {
+		long start = System.nanoTime();
+		long entries;
+		if (source.getName().endsWith(".pgn")) {
+			PgnImporter importer = new PgnImporter(threads);
+			InputStream in = new BufferedInputStream(new FileInputStream(source));
+			PositionIndexWriter writer = new PositionIndexWriter(index);
+			try {
+				importer.importGames(in, writer);
+			} finally {
+				writer.close();
+				in.close();
+				importer.shutdown();
+			}
+			entries = writer.size();
+		} else {
+			GameDatabase database = new GameDatabase(source);
+			try {
+				entries = PositionIndexWriter.build(database, index, threads);
+			} finally {
+				database.close();
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.println(entries + " positions indexed in " + String.format("%.3f", nanos/1e9) + "s with " + threads + " threads (" +
+			(nanos == 0 ? 0 : (long)(entries*1e9/nanos)) + " positions/s), " + index.length() + " bytes");
+	}
+	
+	private static void find(File indexFile,File dbFile,String fen,int max) throws IOException {
+		PositionIndex index = new PositionIndex(indexFile);
+		GameDatabase database = dbFile == null ? null : new GameDatabase(dbFile);
+		try {
+			BitboardPosition position = BitboardPosition.parseFromFen(fen);
+			long start = System.nanoTime();
+			long[] postings = index.find(position);
+			long nanos = System.nanoTime() - start;
+			System.out.println(postings.length + " times in " + index.size() + " positions, found in " + (nanos/1000) + " us");
+			for(int i=0;i<Math.min(max, postings.length);i++) {
+				long posting = postings[i];
+				long n = PositionIndex.game(posting);
+				String line = "  game " + n + ", ply " + PositionIndex.ply(posting);
+				if (database != null && n < database.size()) {
+					PgnGame game = database.getGame(n);
+					line += ": " + game.getTag("White") + " - " + game.getTag("Black") + " " + game.getResult();
+				}
+				System.out.println(line);
+			}
+			if (postings.length > max) System.out.println("  ...");
+		} finally {
+			index.close();
+			if (database != null) database.close();
+		}
+	}
+}
@@ -20,8 +20,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 
 import board.Board;
-import board.exception.IllegalMoveException;
-import board.exception.WrongColorToMoveException;
+import board.GameStatus;
+import board.MoveResult;
 import board.printer.DefaultPrinter;
 
 public class Runner {
@@ -29,17 +29,15 @@ public class Runner {
 	/**
 	 * @param args
 	 * @throws IOException 
-	 * @throws WrongColorToMoveException 
-	 * @throws IllegalMoveException 
 	 */
-	public static void main(String[] args) throws IOException, IllegalMoveException, WrongColorToMoveException {
+	public static void main(String[] args) throws IOException {
 		// TODO Auto-generated method stub
 		
 		Board b = new Board();
 		
 		BufferedReader rdr = new BufferedReader(new InputStreamReader(System.in));
 		do {
-			System.out.println(b.getPositions().size());
+			System.out.println(b.getPlyCount()+1);
 			
 			b.getLatestMove().setPrinter(DefaultPrinter.getSingletonInstance());
 			System.out.println(b.getLatestMove().draw());
@@ -49,16 +47,33 @@ public class Runner {
 			String input = rdr.readLine();
 			if (input.equals("quit")) {
 				break;
-			} else if (input.startsWith("takeback ")) {
-				
+			} else if (parseTakeback(input) != 0) {
+				int count = parseTakeback(input);
+				if (count > 0) b.rollback(count);
+				else System.out.println("Usage: takeback [half moves]");
 			} else {
-				boolean isWhitesMove = !b.getLatestMove().isWhitesMove();
-				if (b.getPositions().size() == 1) isWhitesMove = true; 
-				b.move(isWhitesMove, input);
+				MoveResult result = b.tryMove(input);
+				if (!result.isLegal()) System.out.println("Move refused (" + result.getStatus() + "): " + input);
+				else if (result.getGameStatus() != GameStatus.ONGOING) System.out.println(result.getGameStatus());
 			}
 		} while(true);
 		
 		System.out.println("Goodbye.");
 	}
+	
+	/** Parses a <tt>takeback [n]</tt> command, which takes back n half moves, 1 by default.
+	 * Returns the number of half moves, 0 if <tt>input</tt> is not a takeback command,
+	 * or -1 if it is one with a count that is not a positive number. */
+	public static int parseTakeback(String input) {
+		if (!input.equals("takeback") && !input.startsWith("takeback ")) return 0;
+		String count = input.substring("takeback".length()).trim();
+		if (count.length() == 0) return 1;
+		try {
+			int n = Integer.parseInt(count);
+			return n > 0 ? n : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
 
 }
@@ -0,0 +1,282 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import board.BitboardPosition;
+import board.MoveList;
+import board.MoveStatus;
+import board.pgn.PgnGame;
+import board.pgn.PgnGameCollector;
+import board.pgn.PgnListener;
+
+/** A read-only database of games in a compact binary file, written by GameDatabaseWriter.<br />
+ * The file is mapped into memory with FileChannel.map and games are replayed straight from the mapped bytes, so
+ * opening a database of any size costs only the reading of its small dictionary, and the operating system keeps the
+ * games that are used in its page cache. Games are numbered from 0 in the order they were written; any game can be
+ * read by number. A database can be read by several threads at once.<br /><br />
+ * The file holds a header, the games, an index of the offset of every game and a dictionary of the tag names and
+ * of the values that repeat. Numbers are big endian, and "varint" is an unsigned number in groups of 7 bits, lowest
+ * first, with the high bit set on every byte but the last. A "string" is a varint: twice a dictionary id, or twice
+ * a UTF-8 length plus 1, followed by that many bytes:<br />
+ * <code>
+ * header (32 bytes): "JCDB", version, segment bits, 2 unused bytes, game count (8), index offset (8), dictionary offset (8)<br />
+ * game: flags (1), white rating (varint), black rating (varint), tag count (varint), name and value (2 strings per tag),
+ * ply count (varint), one byte per move, and with the ERROR flag the illegal move (string) and its MoveStatus ordinal (1)<br />
+ * index (8-byte aligned): offset of each game (8)<br />
+ * dictionary: string count (varint, at most MAX_DICTIONARY), then each string as its UTF-8 length (varint) and bytes
+ * </code><br />
+ * The flags hold the result (0 "*", 1 "1-0", 2 "0-1", 3 "1/2-1/2"), RESULT_TAG if the game has a Result tag for
+ * that result, and ERROR if it stopped at an illegal move. A rating of 0 is unknown; other ratings are taken out of
+ * the tags. A move is stored as its index among the legal moves of the position sorted by packed value (there are
+ * never more than 218), so it fits a byte and does not depend on the order the move generator works in.
+ * <p>A mapped buffer cannot be bigger than 2 GB, so the file is mapped in segments of 2^segment bits bytes and the
+ * writer starts a game at the next segment rather than let it cross two.</p>
+ * @see GameDatabaseWriter */
+public class GameDatabase implements Closeable {
+	static final int MAGIC = 0x4A434442;
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 32;
+	static final int DEFAULT_SEGMENT_BITS = 30;
+	/** strings in the dictionary at most; once it is full, new names and values are stored in the games */
+	static final int MAX_DICTIONARY = 1 << 16;
+	static final int RESULT_MASK = 0x3;
+	static final int RESULT_TAG = 0x4;
+	static final int ERROR = 0x8;
+	private static final String[] RESULTS = { "*", "1-0", "0-1", "1/2-1/2" };
+	private static final MoveStatus[] STATUSES = MoveStatus.values();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer[] segments;
+	private final int segmentBits;
+	private final int segmentMask;
+	private final long gameCount;
+	private final long indexOffset;
+	private final String[] strings;
+	
+	/** Opens the database in <tt>file</tt> and reads its dictionary.
+	 * @throws IOException if the file cannot be read or is not a database */
+	public GameDatabase(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try {
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0) { }
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) throw new IOException("Not a game database: " + file);
+			int version = header.get();
+			if (version != VERSION) throw new IOException("Unsupported version " + version + ": " + file);
+			segmentBits = header.get();
+			header.getShort();
+			gameCount = header.getLong();
+			indexOffset = header.getLong();
+			long dictionaryOffset = header.getLong();
+			if (segmentBits < 16 || segmentBits > 30 || gameCount < 0 || indexOffset < HEADER_SIZE || (indexOffset & 7) != 0 ||
+					dictionaryOffset != indexOffset + gameCount*8 || dictionaryOffset >= size) {
+				throw new IOException("Corrupt header: " + file);
+			}
+			segmentMask = (1 << segmentBits) - 1;
+			
+			segments = new ByteBuffer[(int)((size + segmentMask) >>> segmentBits)];
+			for(int i=0;i<segments.length;i++) {
+				long start = (long)i << segmentBits;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << segmentBits));
+			}
+			
+			long[] offset = { dictionaryOffset };
+			long count = readVarint(offset);
+			if (count > MAX_DICTIONARY) throw new IOException("Corrupt dictionary: " + file);
+			strings = new String[(int)count];
+			for(int i=0;i<strings.length;i++) {
+				byte[] bytes = new byte[(int)readVarint(offset)];
+				for(int j=0;j<bytes.length;j++) bytes[j] = byteAt(offset[0]++);
+				strings[i] = new String(bytes, UTF_8);
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		} catch (RuntimeException e) {
+			raf.close();
+			throw new IOException("Corrupt database: " + file, e);
+		}
+	}
+	
+	/** Returns the code of <tt>result</tt> stored in the flags of a game. */
+	static int resultCode(String result) {
+		for(int i=1;i<RESULTS.length;i++) {
+			if (RESULTS[i].equals(result)) return i;
+		}
+		return 0;
+	}
+	
+	/** Closes the file. The mapped memory is freed once the database is no longer referenced. */
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/** Returns game <tt>n</tt> (from 0) as a PgnGame. */
+	public PgnGame getGame(long n) {
+		PgnGameCollector collector = new PgnGameCollector();
+		read(n, 1, collector);
+		return collector.getGames().get(0);
+	}
+	
+	/** Replays game <tt>n</tt> (from 0) to <tt>listener</tt>. */
+	public void read(long n,PgnListener listener) {
+		read(n, 1, listener);
+	}
+	
+	/** Replays <tt>count</tt> games from game <tt>first</tt> to <tt>listener</tt>, with the same calls PgnReader makes
+	 * for the same games in PGN, except that the WhiteElo, BlackElo and Result tags come after the others. */
+	public void read(long first,long count,PgnListener listener) {
+		if (first < 0 || count < 0 || first + count > gameCount) {
+			throw new IndexOutOfBoundsException("Games " + first + " to " + (first+count) + " of " + gameCount);
+		}
+		Decoder decoder = new Decoder();
+		for(long n=first;n<first+count;n++) decoder.read(n, listener);
+	}
+	
+	/** Replays every game to <tt>listener</tt>, in order. */
+	public void readAll(PgnListener listener) {
+		read(0, gameCount, listener);
+	}
+	
+	/** Returns the number of games. */
+	public long size() {
+		return gameCount;
+	}
+	
+	/** Returns the number of tag names and repeated values in the dictionary, which is read when the database is opened. */
+	public int getDictionarySize() {
+		return strings.length;
+	}
+	
+	private byte byteAt(long offset) {
+		return segments[(int)(offset >>> segmentBits)].get((int)offset & segmentMask);
+	}
+	
+	/** Reads a varint at <tt>offset[0]</tt>, which is moved past it. For the dictionary, which may cross segments. */
+	private long readVarint(long[] offset) {
+		long value = 0;
+		for(int shift=0;;shift+=7) {
+			byte b = byteAt(offset[0]++);
+			value |= (long)(b & 0x7F) << shift;
+			if (b >= 0) return value;
+			if (shift > 28) throw new IllegalStateException("Varint too long at " + offset[0]);
+		}
+	}
+	
+	/** Reads games for one read() call, from a single thread. */
+	private class Decoder {
+		private final BitboardPosition standardStart = BitboardPosition.getStartingPosition();
+		private final MoveList moves = new MoveList();
+		/** for the strings stored in a game */
+		private byte[] buffer = new byte[64];
+		/** the segment of the game being read */
+		private ByteBuffer segment;
+		/** the offset in <tt>segment</tt> of the next byte to read */
+		private int offset;
+		
+		private void read(long n,PgnListener listener) {
+			long start = segments[(int)((indexOffset + n*8) >>> segmentBits)].getLong((int)(indexOffset + n*8) & segmentMask);
+			if (start < HEADER_SIZE || start >= indexOffset) throw new IllegalStateException("Corrupt index for game " + n + " in " + file);
+			segment = segments[(int)(start >>> segmentBits)];
+			offset = (int)start & segmentMask;
+			
+			int flags = readByte();
+			int whiteElo = readVarint();
+			int blackElo = readVarint();
+			listener.startGame();
+			String fen = null;
+			for(int i=readVarint();i>0;i--) {
+				String name = readString(n);
+				String value = readString(n);
+				if (name.equals("FEN")) fen = value;
+				listener.tag(name, value);
+			}
+			if (whiteElo > 0) listener.tag("WhiteElo", Integer.toString(whiteElo));
+			if (blackElo > 0) listener.tag("BlackElo", Integer.toString(blackElo));
+			String result = RESULTS[flags & RESULT_MASK];
+			if ((flags & RESULT_TAG) != 0) listener.tag("Result", result);
+			
+			BitboardPosition position = standardStart;
+			if (fen != null) {
+				try {
+					position = BitboardPosition.parseFromFen(fen);
+				} catch (RuntimeException e) {
+					// stored with the ERROR flag and no moves
+				}
+			}
+			try {
+				for(int i=readVarint();i>0;i--) {
+					int index = readByte();
+					position.generateLegalMoves(moves);
+					if (index >= moves.size()) throw new IllegalStateException("Corrupt move in game " + n + " of " + file);
+					moves.sort();
+					int move = moves.get(index);
+					position.doMove(move);
+					listener.move(position, move);
+				}
+				if ((flags & ERROR) != 0) {
+					String error = readString(n);
+					int status = readByte();
+					listener.illegalMove(position, error, status < STATUSES.length ? STATUSES[status] : MoveStatus.ILLEGAL);
+				}
+				listener.endGame(position, result);
+			} finally {
+				while(standardStart.getUndoCount() > 0) standardStart.undoMove();
+			}
+		}
+		
+		private int readByte() {
+			return segment.get(offset++) & 0xFF;
+		}
+		
+		private int readVarint() {
+			int value = 0;
+			for(int shift=0;;shift+=7) {
+				byte b = segment.get(offset++);
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) return value;
+				if (shift > 21) throw new IllegalStateException("Varint too long in " + file);
+			}
+		}
+		
+		/** Reads a string of game <tt>n</tt>: from the dictionary, or from the game itself. */
+		private String readString(long n) {
+			int value = readVarint();
+			if ((value & 1) == 0) {
+				if (value >>> 1 >= strings.length) throw new IllegalStateException("Corrupt tag in game " + n + " of " + file);
+				return strings[value >>> 1];
+			}
+			int length = value >>> 1;
+			if (buffer.length < length) buffer = new byte[Math.max(length, buffer.length*2)];
+			for(int i=0;i<length;i++) buffer[i] = segment.get(offset++);
+			return new String(buffer, 0, length, UTF_8);
+		}
+	}
+}
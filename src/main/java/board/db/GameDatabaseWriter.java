@@ -0,0 +1,281 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import board.BitboardPosition;
+import board.MoveList;
+import board.pgn.GameSink;
+import board.pgn.PgnGame;
+
+/** Writes games to a file in the format read by GameDatabase.<br />
+ * Games are written as they are added. Tag names and the values seen more than once go into a dictionary of at most
+ * GameDatabase.MAX_DICTIONARY strings; other values (dates, rounds, game URLs) are stored in the game, so memory use is
+ * bounded however many games are written.
+ * A game with an illegal move is stored up to that move, along with the move that could not be played.
+ * As a GameSink it can be given straight to PgnImporter to turn a PGN archive into a database.
+ * The file is only complete once close() has been called. Use one writer from a single thread.
+ * @see GameDatabase */
+public class GameDatabaseWriter implements GameSink, Closeable {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** slots of the table of values seen once */
+	private static final int SEEN_SLOTS = 1 << 16;
+	
+	private final File file;
+	private final FileOutputStream fileOut;
+	private final OutputStream out;
+	private final int segmentBits;
+	/** the offset of every game so far, written to a temporary file until close() */
+	private final File indexFile;
+	private final DataOutputStream indexOut;
+	private final Map<String,Integer> ids = new HashMap<String,Integer>();
+	private final List<String> strings = new ArrayList<String>();
+	/** a hash of values stored inline, so one that comes up again goes into the dictionary; a collision only
+	 * puts a value in the dictionary early */
+	private final long[] seen = new long[SEEN_SLOTS];
+	private final BitboardPosition standardStart = BitboardPosition.getStartingPosition();
+	private final MoveList moves = new MoveList();
+	private byte[] record = new byte[1024];
+	private int recordLength;
+	/** bytes written so far, header included */
+	private long offset;
+	private long gameCount;
+	private boolean closed;
+	
+	public GameDatabaseWriter(File file) throws IOException {
+		this(file, GameDatabase.DEFAULT_SEGMENT_BITS);
+	}
+	
+	/** Creates a writer whose games do not cross a boundary of 2^<tt>segmentBits</tt> bytes, so GameDatabase can map the
+	 * file in segments of that size. Only tests need anything other than the default of 1 GB.
+	 * @param segmentBits between 16 and 30 */
+	public GameDatabaseWriter(File file,int segmentBits) throws IOException {
+		if (segmentBits < 16 || segmentBits > 30) throw new IllegalArgumentException("Segment bits should be between 16 and 30: " + segmentBits);
+		this.file = file;
+		this.segmentBits = segmentBits;
+		indexFile = File.createTempFile("gamedb", ".index");
+		indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		fileOut = new FileOutputStream(file);
+		out = new BufferedOutputStream(fileOut, 1 << 16);
+		// the header is filled in by close()
+		out.write(new byte[GameDatabase.HEADER_SIZE]);
+		offset = GameDatabase.HEADER_SIZE;
+	}
+	
+	public void accept(PgnGame game) {
+		try {
+			add(game);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write to " + file, e);
+		}
+	}
+	
+	/** Adds <tt>game</tt> to the database and returns its number. */
+	public long add(PgnGame game) throws IOException {
+		if (closed) throw new IllegalStateException("Writer is closed");
+		recordLength = 0;
+		
+		Map<String,String> tags = game.getTags();
+		String result = game.getResult();
+		int flags = GameDatabase.resultCode(result);
+		if (result.equals(tags.get("Result"))) flags |= GameDatabase.RESULT_TAG;
+		if (!game.isValid()) flags |= GameDatabase.ERROR;
+		writeByte(flags);
+		int whiteElo = parseElo(tags.get("WhiteElo"));
+		int blackElo = parseElo(tags.get("BlackElo"));
+		writeVarint(whiteElo);
+		writeVarint(blackElo);
+		
+		int tagCount = tags.size();
+		if ((flags & GameDatabase.RESULT_TAG) != 0) tagCount--;
+		if (whiteElo > 0) tagCount--;
+		if (blackElo > 0) tagCount--;
+		writeVarint(tagCount);
+		for(Map.Entry<String,String> e : tags.entrySet()) {
+			String name = e.getKey();
+			if (name.equals("Result") && (flags & GameDatabase.RESULT_TAG) != 0) continue;
+			if (name.equals("WhiteElo") && whiteElo > 0) continue;
+			if (name.equals("BlackElo") && blackElo > 0) continue;
+			writeString(name, true);
+			writeString(e.getValue(), false);
+		}
+		
+		writeMoves(game);
+		if (!game.isValid()) {
+			writeString(game.getError(), false);
+			writeByte(game.getErrorStatus().ordinal());
+		}
+		
+		long segmentSize = 1L << segmentBits;
+		if (recordLength > segmentSize) throw new IllegalArgumentException("Game too long to store: " + game);
+		long used = offset & (segmentSize-1);
+		if (used + recordLength > segmentSize) {
+			// start the game at the next segment, so no game crosses two
+			pad(segmentSize - used);
+		}
+		indexOut.writeLong(offset);
+		out.write(record, 0, recordLength);
+		offset += recordLength;
+		return gameCount++;
+	}
+	
+	/** Writes the ply count, then each move as its index among the legal moves sorted by packed value. */
+	private void writeMoves(PgnGame game) {
+		int plies = game.getPlyCount();
+		writeVarint(plies);
+		if (plies == 0) return;
+		BitboardPosition position = game.getTag("FEN") == null ? standardStart : game.getStartingPosition();
+		try {
+			for(int i=0;i<plies;i++) {
+				int move = game.getMove(i);
+				position.generateLegalMoves(moves);
+				moves.sort();
+				int index = moves.indexOf(move);
+				if (index < 0) throw new IllegalArgumentException("Illegal move " + move + " at ply " + i + " of " + game);
+				writeByte(index);
+				position.doMove(move);
+			}
+		} finally {
+			while(position.getUndoCount() > 0) position.undoMove();
+		}
+	}
+	
+	/** Returns the rating in <tt>value</tt>, or 0 if it is missing or not a number that reads back the same. */
+	private static int parseElo(String value) {
+		if (value == null || value.length() == 0 || value.length() > 5 || value.charAt(0) == '0') return 0;
+		int elo = 0;
+		for(int i=0;i<value.length();i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') return 0;
+			elo = elo*10 + (c - '0');
+		}
+		return elo;
+	}
+	
+	/** Writes <tt>s</tt> as twice its dictionary id, or as twice its UTF-8 length plus 1 followed by the bytes.
+	 * Names go into the dictionary the first time, values the second time they are written, while it has room. */
+	private void writeString(String s,boolean name) {
+		Integer id = ids.get(s);
+		if (id == null && strings.size() < GameDatabase.MAX_DICTIONARY && (name || seenBefore(s))) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s);
+		}
+		if (id != null) {
+			writeVarint(id << 1);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF_8);
+		writeVarint(bytes.length << 1 | 1);
+		for(byte b : bytes) writeByte(b);
+	}
+	
+	/** Returns if <tt>s</tt> was given before, as far as the table of values seen once tells, and records it. */
+	private boolean seenBefore(String s) {
+		// 64 bit FNV-1a of the chars
+		long hash = 0xCBF29CE484222325L;
+		for(int i=0;i<s.length();i++) {
+			hash = (hash ^ s.charAt(i)) * 0x100000001B3L;
+		}
+		if (hash == 0) hash = 1;
+		int slot = (int)(hash ^ hash >>> 32) & (SEEN_SLOTS-1);
+		if (seen[slot] == hash) return true;
+		seen[slot] = hash;
+		return false;
+	}
+	
+	private void pad(long bytes) throws IOException {
+		for(long i=0;i<bytes;i++) out.write(0);
+		offset += bytes;
+	}
+	
+	private void writeByte(int b) {
+		if (recordLength == record.length) record = Arrays.copyOf(record, record.length*2);
+		record[recordLength++] = (byte)b;
+	}
+	
+	private void writeVarint(int value) {
+		while((value & ~0x7F) != 0) {
+			writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte(value);
+	}
+	
+	/** Writes the index, the dictionary and the header, and closes the file. */
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			indexOut.close();
+			pad(-offset & 7);
+			long indexOffset = offset;
+			DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				for(long i=0;i<gameCount;i++) {
+					long o = index.readLong();
+					for(int shift=56;shift>=0;shift-=8) out.write((int)(o >>> shift));
+				}
+			} finally {
+				index.close();
+			}
+			offset += gameCount * 8;
+			
+			long dictionaryOffset = offset;
+			recordLength = 0;
+			writeVarint(strings.size());
+			for(String s : strings) {
+				byte[] bytes = s.getBytes(UTF_8);
+				writeVarint(bytes.length);
+				for(byte b : bytes) writeByte(b);
+				if (recordLength > 1 << 16) {
+					out.write(record, 0, recordLength);
+					offset += recordLength;
+					recordLength = 0;
+				}
+			}
+			out.write(record, 0, recordLength);
+			offset += recordLength;
+			out.flush();
+			
+			ByteBuffer header = ByteBuffer.allocate(GameDatabase.HEADER_SIZE);
+			header.putInt(GameDatabase.MAGIC).put((byte)GameDatabase.VERSION).put((byte)segmentBits).putShort((short)0);
+			header.putLong(gameCount).putLong(indexOffset).putLong(dictionaryOffset);
+			header.flip();
+			fileOut.getChannel().write(header, 0);
+		} finally {
+			out.close();
+			indexFile.delete();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import board.BitboardPosition;
+import board.Piece;
+import board.Zobrist;
+
+/** A read-only index of the positions reached in a collection of games, written by PositionIndexWriter, that finds
+ * the games that reached a position without replaying any of them.<br />
+ * The file is a sorted array of entries mapped into memory with FileChannel.map. A lookup is a binary search for the
+ * first entry with the Zobrist key of the position, then a read of the entries that follow with the same key: its
+ * posting list. Each entry is two longs, the key and a posting, which holds the game number and the ply the
+ * position was reached at. Read it with game() and ply(). Entries are sorted by key (as signed longs), then posting,
+ * so the postings of a position come in game order. A position reached several times in a game has a posting for each.
+ * <br /><br />
+ * <code>
+ * header (16 bytes): "JCPI", version, entry count (8)<br />
+ * entry (16 bytes): key (8), game number &lt;&lt; 16 | ply (8)
+ * </code><br />
+ * Two positions can share a key, so a very rare posting may be for another position: replay the game to make sure
+ * if it matters. An index can be read by several threads at once.
+ * @see PositionIndexWriter */
+public class PositionIndex implements Closeable {
+	static final int MAGIC = 0x4A435049;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int ENTRY_SIZE = 16;
+	private static final int SEGMENT_BITS = 30;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+	
+	private final FileChannel channel;
+	private final ByteBuffer[] segments;
+	private final long entryCount;
+	
+	/** Opens the index in <tt>file</tt>.
+	 * @throws IOException if the file cannot be read or is not an index */
+	public PositionIndex(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try {
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0) { }
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) throw new IOException("Not a position index: " + file);
+			int version = header.getInt();
+			if (version != VERSION) throw new IOException("Unsupported version " + version + ": " + file);
+			entryCount = header.getLong();
+			if (entryCount < 0 || HEADER_SIZE + entryCount*ENTRY_SIZE != size) throw new IOException("Corrupt header: " + file);
+			
+			// segments are a multiple of ENTRY_SIZE, so no entry crosses two
+			segments = new ByteBuffer[(int)((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			for(int i=0;i<segments.length;i++) {
+				long start = (long)i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << SEGMENT_BITS));
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+	
+	/** Returns the game number of <tt>posting</tt>. */
+	public static long game(long posting) {
+		return posting >>> 16;
+	}
+	
+	/** Returns the ply of <tt>posting</tt>: the number of moves played to reach the position (0 for the starting position). */
+	public static int ply(long posting) {
+		return (int)posting & 0xFFFF;
+	}
+	
+	static long posting(long game,int ply) {
+		return game << 16 | ply;
+	}
+	
+	/** Closes the file. The mapped memory is freed once the index is no longer referenced. */
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/** Returns the number of times a position with <tt>key</tt> was reached. */
+	public int count(long key) {
+		long first = lowerBound(key);
+		long i = first;
+		while(i < entryCount && key(i) == key) i++;
+		return (int)Math.min(i - first, Integer.MAX_VALUE);
+	}
+	
+	/** Returns the postings of the position with Zobrist key <tt>key</tt>, in game order. Read them with game() and ply(). */
+	public long[] find(long key) {
+		return find(key, Integer.MAX_VALUE);
+	}
+	
+	/** Returns the first <tt>max</tt> postings (at most) of the position with Zobrist key <tt>key</tt>, in game order. */
+	public long[] find(long key,int max) {
+		long first = lowerBound(key);
+		int count = 0;
+		while(count < max && first + count < entryCount && key(first + count) == key) count++;
+		long[] postings = new long[count];
+		for(int i=0;i<count;i++) postings[i] = posting(first + i);
+		return postings;
+	}
+	
+	/** Returns the number of times <tt>position</tt> was reached, counted as find(BitboardPosition) does. */
+	public int count(BitboardPosition position) {
+		int count = 0;
+		for(long key : keys(position)) count += count(key);
+		return count;
+	}
+	
+	/** Returns the postings of <tt>position</tt>, in game order.<br />
+	 * A position without an en passant square (as a FEN often gives it, eg after 1.e4) also finds the same position
+	 * reached by a double pawn push, whose key includes the en passant square whether or not a pawn can take on it. */
+	public long[] find(BitboardPosition position) {
+		long[] keys = keys(position);
+		if (keys.length == 1) return find(keys[0]);
+		long[][] found = new long[keys.length][];
+		int count = 0;
+		for(int i=0;i<keys.length;i++) {
+			found[i] = find(keys[i]);
+			count += found[i].length;
+		}
+		long[] postings = new long[count];
+		count = 0;
+		for(long[] f : found) {
+			System.arraycopy(f, 0, postings, count, f.length);
+			count += f.length;
+		}
+		Arrays.sort(postings);
+		return postings;
+	}
+	
+	/** Returns the key of <tt>position</tt>, then if it has no en passant square the key it would have with each one
+	 * the last move could have made. */
+	private static long[] keys(BitboardPosition position) {
+		long key = position.getZobristKey();
+		if (position.getEnPassantSquare() >= 0) return new long[] { key };
+		boolean white = position.isWhitesMove();
+		long occupied = position.getOccupied();
+		// the rank the pawn of the other side would have moved to, and the step back towards its starting square
+		int rank = white ? 4 : 3, step = white ? 8 : -8;
+		Piece pawn = white ? Piece.BLACK_PAWN : Piece.WHITE_PAWN;
+		long[] keys = new long[9];
+		int count = 0;
+		keys[count++] = key;
+		for(int file=0;file<8;file++) {
+			int sq = rank*8 + file;
+			if (position.getPiece(sq) == pawn && (occupied & (1L << (sq+step) | 1L << (sq+step*2))) == 0) {
+				keys[count++] = key ^ Zobrist.enPassant(file);
+			}
+		}
+		return Arrays.copyOf(keys, count);
+	}
+	
+	/** Returns the number of entries (positions reached, counted once per game and ply). */
+	public long size() {
+		return entryCount;
+	}
+	
+	/** Returns the index of the first entry with a key of at least <tt>key</tt>, or entryCount if there is none. */
+	private long lowerBound(long key) {
+		long low = 0, high = entryCount;
+		while(low < high) {
+			long mid = (low + high) >>> 1;
+			if (key(mid) < key) low = mid+1; else high = mid;
+		}
+		return low;
+	}
+	
+	private long key(long entry) {
+		long offset = HEADER_SIZE + entry*ENTRY_SIZE;
+		return segments[(int)(offset >>> SEGMENT_BITS)].getLong((int)offset & SEGMENT_MASK);
+	}
+	
+	private long posting(long entry) {
+		long offset = HEADER_SIZE + entry*ENTRY_SIZE + 8;
+		return segments[(int)(offset >>> SEGMENT_BITS)].getLong((int)offset & SEGMENT_MASK);
+	}
+}
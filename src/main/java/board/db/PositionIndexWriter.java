@@ -0,0 +1,346 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import board.pgn.GameSink;
+import board.pgn.PgnGame;
+
+/** Writes the index of the positions reached in a collection of games, in the format read by PositionIndex.<br />
+ * Entries are gathered in a fixed size buffer, which is sorted and written to a temporary file (a run) each time it
+ * fills up; close() merges the runs into the index, at most MAX_FAN_IN runs at a time. Memory use and open files
+ * are therefore bounded however many games are indexed, and the games can be added in any order.
+ * <p>As a GameSink it can be given to PgnImporter, which replays the games on several threads, to index a PGN
+ * archive; the game numbers are those of the import. build() indexes a GameDatabase on several threads, each
+ * replaying its own share of the games and sorting its own runs. Otherwise use one writer from a single thread.</p>
+ * @see PositionIndex */
+public class PositionIndexWriter implements GameSink, Closeable {
+	/** entries per run by default: 32 MB of buffer */
+	public static final int DEFAULT_RUN_ENTRIES = 1 << 21;
+	/** games taken at a time by each thread of build() */
+	private static final int BUILD_CHUNK = 256;
+	/** runs merged at a time, each read through a 64 KB buffer; with more runs, merge passes write bigger runs first */
+	public static final int MAX_FAN_IN = 64;
+	private static final int INSERTION_SORT_SIZE = 16;
+	
+	private final File file;
+	private final int runEntries;
+	private final Run buffer;
+	/** the runs written so far; guarded by itself */
+	private final List<File> runs = new ArrayList<File>();
+	/** entries written to runs; guarded by <tt>runs</tt> */
+	private long entryCount;
+	private boolean closed;
+	
+	public PositionIndexWriter(File file) {
+		this(file, DEFAULT_RUN_ENTRIES);
+	}
+	
+	/** Creates a writer that sorts <tt>runEntries</tt> entries (16 bytes each) at a time. */
+	public PositionIndexWriter(File file,int runEntries) {
+		if (runEntries < 1 || runEntries > 1 << 28) throw new IllegalArgumentException("Run size should be between 1 and 2^28: " + runEntries);
+		this.file = file;
+		this.runEntries = runEntries;
+		this.buffer = new Run();
+	}
+	
+	/** Indexes every game of <tt>db</tt> into <tt>file</tt> on <tt>threads</tt> threads, and returns the number of entries. */
+	public static long build(final GameDatabase db,File file,int threads) throws IOException {
+		if (threads < 1) throw new IllegalArgumentException("Thread count should be at least 1: " + threads);
+		final PositionIndexWriter writer = new PositionIndexWriter(file);
+		final AtomicLong next = new AtomicLong();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int i=0;i<threads;i++) {
+			tasks.add(new Callable<Void>() {
+				public Void call() throws IOException {
+					Run run = writer.new Run();
+					for(long first;(first = next.getAndAdd(BUILD_CHUNK)) < db.size();) {
+						for(long n=first;n<Math.min(first + BUILD_CHUNK, db.size());n++) run.add(n, db.getGame(n));
+					}
+					run.spill();
+					return null;
+				}
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "position-index-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		boolean done = false;
+		try {
+			for(Future<Void> f : pool.invokeAll(tasks)) f.get();
+			writer.close();
+			done = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building the index", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IllegalStateException("Indexing failed", e.getCause());
+		} finally {
+			pool.shutdown();
+			if (!done) writer.deleteRuns();
+		}
+		return writer.size();
+	}
+	
+	public void accept(PgnGame game) {
+		try {
+			add(game.getNumber(), game);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write a run for " + file, e);
+		}
+	}
+	
+	/** Adds every position of <tt>game</tt>, from its starting position to the one after its last move, as game number <tt>n</tt>. */
+	public void add(long n,PgnGame game) throws IOException {
+		checkOpen();
+		buffer.add(n, game);
+	}
+	
+	/** Adds the position with Zobrist key <tt>key</tt>, reached in game <tt>n</tt> after <tt>ply</tt> plies. */
+	public void add(long key,long n,int ply) throws IOException {
+		checkOpen();
+		buffer.add(key, n, ply);
+	}
+	
+	private void checkOpen() {
+		if (closed) throw new IllegalStateException("Writer is closed");
+	}
+	
+	/** Returns the number of entries added so far. */
+	public long size() {
+		synchronized(runs) {
+			return entryCount + buffer.size;
+		}
+	}
+	
+	/** Merges the runs into the index file. */
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			buffer.spill();
+			merge();
+		} finally {
+			deleteRuns();
+		}
+	}
+	
+	private void deleteRuns() {
+		synchronized(runs) {
+			for(File run : runs) run.delete();
+			runs.clear();
+		}
+	}
+	
+	private void merge() throws IOException {
+		// each pass merges groups of MAX_FAN_IN runs into one, until the last merge can take them all
+		while(runs.size() > MAX_FAN_IN) {
+			List<File> pass = new ArrayList<File>(runs);
+			for(int i=0;i<pass.size();i+=MAX_FAN_IN) {
+				List<File> group = pass.subList(i, Math.min(i + MAX_FAN_IN, pass.size()));
+				if (group.size() == 1) continue;
+				File merged = File.createTempFile("positionindex", ".run");
+				synchronized(runs) {
+					runs.add(merged);
+				}
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 1 << 16));
+				try {
+					merge(group, out);
+				} finally {
+					out.close();
+				}
+				synchronized(runs) {
+					for(File run : group) {
+						run.delete();
+						runs.remove(run);
+					}
+				}
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(PositionIndex.MAGIC);
+			out.writeInt(PositionIndex.VERSION);
+			out.writeLong(entryCount);
+			merge(runs, out);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/** Writes the entries of <tt>group</tt>, which are sorted runs, to <tt>out</tt> in order. */
+	private static void merge(List<File> group,DataOutputStream out) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, group.size()), new Comparator<RunReader>() {
+			public int compare(RunReader a,RunReader b) {
+				return compareEntries(a.key, a.posting, b.key, b.posting);
+			}
+		});
+		try {
+			for(File run : group) {
+				RunReader reader = new RunReader(run);
+				if (reader.next()) queue.add(reader); else reader.close();
+			}
+			while(!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				out.writeLong(reader.key);
+				out.writeLong(reader.posting);
+				if (reader.next()) queue.add(reader); else reader.close();
+			}
+		} finally {
+			for(RunReader reader : queue) reader.close();
+		}
+	}
+	
+	private static int compareEntries(long key1,long posting1,long key2,long posting2) {
+		if (key1 != key2) return key1 < key2 ? -1 : 1;
+		return posting1 < posting2 ? -1 : posting1 == posting2 ? 0 : 1;
+	}
+	
+	/** Sorts the entries <tt>low</tt> to <tt>high</tt> (inclusive) of <tt>a</tt>, which holds a key and a posting per entry. */
+	private static void sort(long[] a,int low,int high) {
+		while(high - low >= INSERTION_SORT_SIZE) {
+			int mid = (low + high) >>> 1;
+			// median of three as the pivot
+			if (less(a, mid, low)) swap(a, mid, low);
+			if (less(a, high, mid)) {
+				swap(a, high, mid);
+				if (less(a, mid, low)) swap(a, mid, low);
+			}
+			long pivotKey = a[mid*2], pivotPosting = a[mid*2+1];
+			int i = low, j = high;
+			while(i <= j) {
+				while(compareEntries(a[i*2], a[i*2+1], pivotKey, pivotPosting) < 0) i++;
+				while(compareEntries(a[j*2], a[j*2+1], pivotKey, pivotPosting) > 0) j--;
+				if (i <= j) swap(a, i++, j--);
+			}
+			// recurse on the smaller part, loop on the bigger one
+			if (j - low < high - i) {
+				sort(a, low, j);
+				low = i;
+			} else {
+				sort(a, i, high);
+				high = j;
+			}
+		}
+		for(int i=low+1;i<=high;i++) {
+			for(int j=i;j>low && less(a, j, j-1);j--) swap(a, j, j-1);
+		}
+	}
+	
+	private static boolean less(long[] a,int i,int j) {
+		return compareEntries(a[i*2], a[i*2+1], a[j*2], a[j*2+1]) < 0;
+	}
+	
+	private static void swap(long[] a,int i,int j) {
+		long key = a[i*2], posting = a[i*2+1];
+		a[i*2] = a[j*2];
+		a[i*2+1] = a[j*2+1];
+		a[j*2] = key;
+		a[j*2+1] = posting;
+	}
+	
+	/** A buffer of entries, sorted and written to a run when full. Each is used by a single thread. */
+	private class Run {
+		/** a key and a posting per entry, allocated at the first one */
+		private long[] entries;
+		private int size;
+		
+		private void add(long n,PgnGame game) throws IOException {
+			if (n < 0) throw new IllegalArgumentException("Game without a number: " + game);
+			for(int ply=0;ply<=Math.min(game.getPlyCount(), 0xFFFF);ply++) add(game.getKey(ply), n, ply);
+		}
+		
+		private void add(long key,long n,int ply) throws IOException {
+			if (entries == null) entries = new long[runEntries*2];
+			if (size == runEntries) spill();
+			entries[size*2] = key;
+			entries[size*2+1] = PositionIndex.posting(n, ply);
+			size++;
+		}
+		
+		private void spill() throws IOException {
+			if (size == 0) return;
+			sort(entries, 0, size-1);
+			File run = File.createTempFile("positionindex", ".run");
+			synchronized(runs) {
+				runs.add(run);
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+			try {
+				for(int i=0;i<size*2;i++) out.writeLong(entries[i]);
+			} finally {
+				out.close();
+			}
+			synchronized(runs) {
+				entryCount += size;
+				size = 0;
+			}
+		}
+	}
+	
+	/** Reads a run back in order for the merge. */
+	private static class RunReader {
+		private final DataInputStream in;
+		private long key;
+		private long posting;
+		
+		private RunReader(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+		}
+		
+		/** Reads the next entry, or returns false at the end of the run. */
+		private boolean next() throws IOException {
+			try {
+				key = in.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			posting = in.readLong();
+			return true;
+		}
+		
+		private void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import board.BitboardPosition;
+import board.MoveList;
+import board.PositionState;
+
+/** A ScoringAlgorithm that searches the position: iterative deepening negamax with alpha-beta pruning and
+ * a quiescence search on captures, using the static evaluation in Evaluation.<br />
+ * Score() returns every legal move, best first. The first move's score is exact; the others are upper bounds.
+ * Scores are in pawns from the point of view of the side that is moving; a forced mate scores about +-310.
+ * <p>The search stops at the maximum depth or, after the first iteration, when the node or time limit is hit,
+ * and then returns the result of the last iteration that completed. One instance may be shared by several threads.</p>
+ * <p>Results are cached in a TranspositionTable, which can be shared between instances so that concurrent
+ * searches reuse each other's work.</p> */
+public class AlphaBetaSearch implements ScoringAlgorithm {
+	public static final int DEFAULT_MAX_DEPTH = 5;
+
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+	private long maxNodes;
+	private long maxTimeMillis;
+	private TranspositionTable table;
+	private int threads = 1;
+	/** runs the Lazy SMP helpers, created on first use */
+	private ExecutorService pool;
+
+	/** Depth and nodes of the last search; only meaningful when one thread uses this instance. */
+	private volatile int lastDepth;
+	private volatile long lastNodes;
+
+	/** Creates a search with its own TranspositionTable of TranspositionTable.DEFAULT_MB. */
+	public AlphaBetaSearch() {
+		this(DEFAULT_MAX_DEPTH);
+	}
+
+	/** @param maxDepth maximum depth in plies, not counting the quiescence search */
+	public AlphaBetaSearch(int maxDepth) {
+		this(maxDepth, new TranspositionTable());
+	}
+
+	/** @param table the transposition table to use, possibly shared with other searches; null for none */
+	public AlphaBetaSearch(int maxDepth,TranspositionTable table) {
+		setMaxDepth(maxDepth);
+		this.table = table;
+	}
+
+	/** Returns the depth completed by the last search. */
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+	/** Returns the nodes searched by the last search, including quiescence nodes. */
+	public long getLastNodes() {
+		return lastNodes;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+	public long getMaxTimeMillis() {
+		return maxTimeMillis;
+	}
+
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+
+	@Override
+	public Move[] Score(PositionState positionState,boolean white) {
+		BitboardPosition b = BitboardPosition.fromPositionState(positionState);
+		b.setWhiteToMove(white);
+		return score(b);
+	}
+
+	/** Same as Score() for a bitboard position; the side to move is the one given by <tt>b</tt>. <tt>b</tt> is not changed. */
+	public Move[] score(BitboardPosition b) {
+		long deadline = maxTimeMillis > 0 ? System.nanoTime() + maxTimeMillis*1000000L : 0;
+		TranspositionTable table = this.table;
+		if (table != null) table.newSearch();
+		Searcher searcher = new Searcher(b.copy(), table, maxNodes, deadline);
+
+		MoveList list = new MoveList();
+		b.generateLegalMoves(list);
+		int count = list.size();
+		int[] moves = new int[count];
+		for(int i=0;i<count;i++) moves[i] = list.get(i);
+		int[] scores = new int[count];
+
+		// Lazy SMP: helpers search the same root into the shared table, so the main search finds more cutoffs there
+		int threads = table == null || count < 2 ? 1 : this.threads;
+		AtomicBoolean stop = new AtomicBoolean();
+		List<Future<Long>> helpers = new ArrayList<Future<Long>>(threads-1);
+		for(int i=1;i<threads;i++) {
+			Searcher helper = new Searcher(b.copy(), table, 0, 0);
+			helper.setStopSignal(stop);
+			helpers.add(getPool().submit(new Helper(helper, moves, count, i)));
+		}
+
+		int depth = iterate(searcher, moves, count, scores, 1);
+		long nodes = searcher.getNodes();
+
+		stop.set(true);
+		try {
+			for(Future<Long> f : helpers) {
+				nodes += f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search helper failed", e.getCause());
+		}
+		lastDepth = depth;
+		lastNodes = nodes;
+
+		Move[] arr = new Move[count];
+		for(int i=0;i<count;i++) {
+			arr[i] = new Move(moves[i], scores[i] / 100.0);
+		}
+		return arr;
+	}
+
+	/** Iterative deepening from <tt>startDepth</tt> up to the maximum depth. After each completed iteration
+	 * the moves are sorted best first and their scores copied to <tt>scores</tt>.
+	 * @return the last depth completed */
+	private int iterate(Searcher searcher,int[] moves,int count,int[] scores,int startDepth) {
+		int[] iteration = new int[count];
+		int depth = startDepth-1;
+		int completed = 0;
+		while(count > 0 && depth < maxDepth) {
+			if (!searcher.searchRoot(depth+1, moves, count, iteration)) break;
+			depth++;
+			completed = depth;
+			System.arraycopy(iteration, 0, scores, 0, count);
+			sortByScore(moves, scores, count);
+			searcher.setLimitsEnabled(true);
+			// a forced mate will not change with more depth
+			if (Math.abs(scores[0]) >= Searcher.MATE - Searcher.MAX_PLY) break;
+		}
+		return completed;
+	}
+
+	private synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newCachedThreadPool(new ThreadFactory() {
+				private int count;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "search-helper-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+
+	/** Number of threads searching each position, including the calling thread. 1 (the default) searches on the calling thread only.<br />
+	 * With more threads, helper threads search the same position into the shared TranspositionTable (Lazy SMP)
+	 * and Score() returns the result of the calling thread's search, which goes deeper in the same time thanks to the table. */
+	public void setThreads(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Thread count should be at least 1: " + threads);
+		this.threads = threads;
+	}
+
+	/** Stops the helper threads once they are idle. Only needed when setThreads() was used. */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	public void setMaxDepth(int maxDepth) {
+		if (maxDepth < 1) throw new IllegalArgumentException("maxDepth should be at least 1: " + maxDepth);
+		this.maxDepth = Math.min(maxDepth, Searcher.MAX_PLY/2);
+	}
+
+	/** Stops the search after about <tt>maxNodes</tt> nodes. 0 for no limit. */
+	public void setMaxNodes(long maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+
+	/** Stops the search after about <tt>maxTimeMillis</tt> milliseconds. 0 for no limit. */
+	public void setMaxTimeMillis(long maxTimeMillis) {
+		this.maxTimeMillis = maxTimeMillis;
+	}
+
+	/** Sets the transposition table to use, possibly shared with other searches; null for none. */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/** Stable insertion sort of the moves by descending score, so the best move is searched first next iteration. */
+	static void sortByScore(int[] moves,int[] scores,int count) {
+		for(int i=1;i<count;i++) {
+			int move = moves[i], score = scores[i];
+			int j = i-1;
+			while(j >= 0 && scores[j] < score) {
+				moves[j+1] = moves[j];
+				scores[j+1] = scores[j];
+				j--;
+			}
+			moves[j+1] = move;
+			scores[j+1] = score;
+		}
+	}
+
+	/** A Lazy SMP helper. Helpers with an odd id start one ply deeper and each helper tries the root moves
+	 * in a different rotation, so they do not all search the same nodes in the same order. */
+	private class Helper implements Callable<Long> {
+		private final Searcher searcher;
+		private final int[] moves;
+		private final int count;
+		private final int id;
+
+		private Helper(Searcher searcher,int[] rootMoves,int count,int id) {
+			this.searcher = searcher;
+			this.count = count;
+			this.id = id;
+			moves = new int[count];
+			for(int i=0;i<count;i++) {
+				moves[i] = rootMoves[(i + id) % count];
+			}
+		}
+
+		public Long call() {
+			searcher.setLimitsEnabled(true);
+			iterate(searcher, moves, count, new int[count], 1 + (id & 1));
+			return searcher.getNodes();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.engine;
+
+import static board.Bitboards.lsb;
+
+import board.BitboardPosition;
+import board.Piece;
+
+/** A simple static evaluation: material plus piece-square tables, in centipawns.<br />
+ * The tables are from Tomasz Michniewski's "Simplified evaluation function", written from white's point of view
+ * with rank 8 first, so a white piece on square <tt>sq</tt> (A1 = 0) uses index <tt>sq ^ 56</tt> and a black piece uses <tt>sq</tt>.
+ * @see http://chessprogramming.wikispaces.com/Simplified+evaluation+function */
+public final class Evaluation {
+	public static final int PAWN = 100, KNIGHT = 320, BISHOP = 330, ROOK = 500, QUEEN = 900, KING = 20000;
+	/** Value of each piece, indexed by Piece.ordinal(). EMPTY is 0. */
+	static final int[] VALUES = { KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN, KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN, 0 };
+	/** Non-pawn material (both sides together) below which the king uses its endgame table */
+	private static final int ENDGAME_MATERIAL = 2*(ROOK+BISHOP+KNIGHT);
+
+	private static final int[] PAWN_TABLE = {
+		  0,  0,  0,  0,  0,  0,  0,  0,
+		 50, 50, 50, 50, 50, 50, 50, 50,
+		 10, 10, 20, 30, 30, 20, 10, 10,
+		  5,  5, 10, 25, 25, 10,  5,  5,
+		  0,  0,  0, 20, 20,  0,  0,  0,
+		  5, -5,-10,  0,  0,-10, -5,  5,
+		  5, 10, 10,-20,-20, 10, 10,  5,
+		  0,  0,  0,  0,  0,  0,  0,  0,
+	};
+	private static final int[] KNIGHT_TABLE = {
+		-50,-40,-30,-30,-30,-30,-40,-50,
+		-40,-20,  0,  0,  0,  0,-20,-40,
+		-30,  0, 10, 15, 15, 10,  0,-30,
+		-30,  5, 15, 20, 20, 15,  5,-30,
+		-30,  0, 15, 20, 20, 15,  0,-30,
+		-30,  5, 10, 15, 15, 10,  5,-30,
+		-40,-20,  0,  5,  5,  0,-20,-40,
+		-50,-40,-30,-30,-30,-30,-40,-50,
+	};
+	private static final int[] BISHOP_TABLE = {
+		-20,-10,-10,-10,-10,-10,-10,-20,
+		-10,  0,  0,  0,  0,  0,  0,-10,
+		-10,  0,  5, 10, 10,  5,  0,-10,
+		-10,  5,  5, 10, 10,  5,  5,-10,
+		-10,  0, 10, 10, 10, 10,  0,-10,
+		-10, 10, 10, 10, 10, 10, 10,-10,
+		-10,  5,  0,  0,  0,  0,  5,-10,
+		-20,-10,-10,-10,-10,-10,-10,-20,
+	};
+	private static final int[] ROOK_TABLE = {
+		  0,  0,  0,  0,  0,  0,  0,  0,
+		  5, 10, 10, 10, 10, 10, 10,  5,
+		 -5,  0,  0,  0,  0,  0,  0, -5,
+		 -5,  0,  0,  0,  0,  0,  0, -5,
+		 -5,  0,  0,  0,  0,  0,  0, -5,
+		 -5,  0,  0,  0,  0,  0,  0, -5,
+		 -5,  0,  0,  0,  0,  0,  0, -5,
+		  0,  0,  0,  5,  5,  0,  0,  0,
+	};
+	private static final int[] QUEEN_TABLE = {
+		-20,-10,-10, -5, -5,-10,-10,-20,
+		-10,  0,  0,  0,  0,  0,  0,-10,
+		-10,  0,  5,  5,  5,  5,  0,-10,
+		 -5,  0,  5,  5,  5,  5,  0, -5,
+		  0,  0,  5,  5,  5,  5,  0, -5,
+		-10,  5,  5,  5,  5,  5,  0,-10,
+		-10,  0,  5,  0,  0,  0,  0,-10,
+		-20,-10,-10, -5, -5,-10,-10,-20,
+	};
+	private static final int[] KING_TABLE = {
+		-30,-40,-40,-50,-50,-40,-40,-30,
+		-30,-40,-40,-50,-50,-40,-40,-30,
+		-30,-40,-40,-50,-50,-40,-40,-30,
+		-30,-40,-40,-50,-50,-40,-40,-30,
+		-20,-30,-30,-40,-40,-30,-30,-20,
+		-10,-20,-20,-20,-20,-20,-20,-10,
+		 20, 20,  0,  0,  0,  0, 20, 20,
+		 20, 30, 10,  0,  0, 10, 30, 20,
+	};
+	private static final int[] KING_ENDGAME_TABLE = {
+		-50,-40,-30,-20,-20,-30,-40,-50,
+		-30,-20,-10,  0,  0,-10,-20,-30,
+		-30,-10, 20, 30, 30, 20,-10,-30,
+		-30,-10, 30, 40, 40, 30,-10,-30,
+		-30,-10, 30, 40, 40, 30,-10,-30,
+		-30,-10, 20, 30, 30, 20,-10,-30,
+		-30,-30,  0,  0,  0,  0,-30,-30,
+		-50,-30,-30,-30,-30,-30,-30,-50,
+	};
+	/** piece-square table of each piece type, indexed like BitboardPosition piece types (king first) */
+	private static final int[][] TABLES = { KING_TABLE, QUEEN_TABLE, ROOK_TABLE, BISHOP_TABLE, KNIGHT_TABLE, PAWN_TABLE };
+	private static final Piece[] PIECES = Piece.values();
+
+	private Evaluation() { }
+
+	/** Returns the evaluation of <tt>b</tt> in centipawns from the point of view of the side to move. */
+	public static int evaluate(BitboardPosition b) {
+		int score = 0;
+		int nonPawnMaterial = 0;
+		for(int type=1;type<6;type++) {
+			score += evaluatePieces(b.getBitboard(PIECES[type]), type, true);
+			score -= evaluatePieces(b.getBitboard(PIECES[type+6]), type, false);
+			if (type != 5) {
+				nonPawnMaterial += VALUES[type] * (Long.bitCount(b.getBitboard(PIECES[type])) + Long.bitCount(b.getBitboard(PIECES[type+6])));
+			}
+		}
+		int[] kingTable = nonPawnMaterial <= ENDGAME_MATERIAL ? KING_ENDGAME_TABLE : KING_TABLE;
+		long king = b.getBitboard(Piece.WHITE_KING);
+		if (king != 0) score += kingTable[lsb(king) ^ 56];
+		king = b.getBitboard(Piece.BLACK_KING);
+		if (king != 0) score -= kingTable[lsb(king)];
+		return b.isWhitesMove() ? score : -score;
+	}
+
+	private static int evaluatePieces(long bb,int type,boolean white) {
+		int[] table = TABLES[type];
+		int flip = white ? 56 : 0;
+		int score = 0;
+		while(bb != 0) {
+			score += VALUES[type] + table[lsb(bb) ^ flip];
+			bb &= bb-1;
+		}
+		return score;
+	}
+}
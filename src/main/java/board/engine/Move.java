@@ -15,14 +15,35 @@
  */
 package board.engine;
 
+import board.PackedMove;
+
+/** A move with a score. The move is held either as notation or as a packed int (see PackedMove);
+ * in the latter case the notation is only built when it is asked for. */
 public class Move implements Comparable<Move> {
+	private int move = PackedMove.NONE;
 	private String notation;
 	private double score;
 	
+	public Move() {
+		
+	}
+	
+	public Move(int move,double score) {
+		this.move = move;
+		this.score = score;
+	}
+	
+	/** Returns the packed move, or PackedMove.NONE if this move was only given as notation. */
+	public int getMove() {
+		return move;
+	}
 	public void setNotation(String notation) {
 		this.notation = notation;
 	}
 	public String getNotation() {
+		if (notation == null && move != PackedMove.NONE) {
+			notation = PackedMove.toUci(move);
+		}
 		return notation;
 	}
 	public void setScore(double score) {
@@ -33,11 +54,11 @@ public class Move implements Comparable<Move> {
 	}
 	@Override
 	public int compareTo(Move o) {
-		return new Double(o.score).compareTo(score);
+		return Double.compare(o.score, score);
 	}
 	
 	@Override
 	public String toString() {
-		return notation+"["+score+"]";
+		return getNotation()+"["+score+"]";
 	}
 }
@@ -0,0 +1,92 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.engine;
+
+import board.BitboardPosition;
+import board.PackedMove;
+
+/** The move ordering heuristics of a search: MVV-LVA for captures, two killer moves per ply and a butterfly
+ * history table, both updated when a quiet move causes a beta cutoff.<br />
+ * score() turns them into one sort key per move: the hash move first, then captures and promotions (most valuable
+ * victim first, then least valuable attacker), then the killers, then the other quiet moves by history.
+ * @see http://chessprogramming.wikispaces.com/Move+Ordering */
+public class MoveOrdering {
+	static final int HASH_MOVE = 1 << 30;
+	static final int CAPTURE = 1 << 24;
+	static final int KILLER = 1 << 22;
+	/** history values are halved when one gets this big, so they stay below KILLER and recent cutoffs weigh more */
+	private static final int HISTORY_LIMIT = 1 << 20;
+
+	private final int[][] killers;
+	/** history[side*4096 + from*64 + to], side 0 = white */
+	private final int[] history = new int[2*64*64];
+
+	/** @param maxPly number of plies to keep killer moves for */
+	public MoveOrdering(int maxPly) {
+		killers = new int[maxPly][2];
+	}
+
+	/** Forgets the killer moves and history. */
+	public void clear() {
+		for(int[] k : killers) {
+			k[0] = k[1] = PackedMove.NONE;
+		}
+		java.util.Arrays.fill(history, 0);
+	}
+
+	public int getHistory(boolean white,int move) {
+		return history[historyIndex(white, move)];
+	}
+
+	/** Returns if <tt>move</tt> is one of the killer moves at <tt>ply</tt>. */
+	public boolean isKiller(int ply,int move) {
+		return killers[ply][0] == move || killers[ply][1] == move;
+	}
+
+	/** Returns the sort key of <tt>move</tt> in <tt>position</tt>; higher is tried first. */
+	public int score(BitboardPosition position,int move,int hashMove,int ply) {
+		if (move == hashMove) return HASH_MOVE;
+		if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) {
+			int key = CAPTURE;
+			if (PackedMove.isCapture(move)) {
+				int victim = PackedMove.isEnPassant(move) ? Evaluation.PAWN : Evaluation.VALUES[position.getPiece(PackedMove.to(move)).ordinal()];
+				key += victim*16 - Evaluation.VALUES[position.getPiece(PackedMove.from(move)).ordinal()]/100;
+			}
+			if (PackedMove.isPromotion(move)) key += PackedMove.promotion(move) == PackedMove.QUEEN ? Evaluation.QUEEN*16 : -Evaluation.QUEEN;
+			return key;
+		}
+		if (killers[ply][0] == move) return KILLER + 1;
+		if (killers[ply][1] == move) return KILLER;
+		return history[historyIndex(position.isWhitesMove(), move)];
+	}
+
+	/** Records that the quiet <tt>move</tt> of <tt>white</tt> caused a beta cutoff at <tt>ply</tt> with <tt>depth</tt> plies left. */
+	public void update(boolean white,int move,int ply,int depth) {
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		int i = historyIndex(white, move);
+		history[i] += depth*depth;
+		if (history[i] >= HISTORY_LIMIT) {
+			for(int j=0;j<history.length;j++) history[j] >>= 1;
+		}
+	}
+
+	private static int historyIndex(boolean white,int move) {
+		return (white ? 0 : 4096) + (PackedMove.from(move) << 6) + PackedMove.to(move);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.engine;
+
+import board.BitboardPosition;
+import board.MoveList;
+import board.PackedMove;
+
+/** Hands out the legal moves of a position best first, according to MoveOrdering, generating them in stages:
+ * the hash move, then captures and promotions, then the quiet moves.<br />
+ * A stage is only generated once the one before it is used up, so a node that gets a beta cutoff from the hash move
+ * or a capture never generates its quiet moves. Within a stage each call to next() selects the best of the remaining moves
+ * instead of sorting the whole stage up front.
+ * A searcher keeps one MovePicker per ply and reuses it. */
+public class MovePicker {
+	private static final int HASH = 0, CAPTURES = 1, QUIETS = 2, DONE = 3;
+
+	private final MoveOrdering ordering;
+	private final MoveList moves = new MoveList();
+	private final int[] scores = new int[MoveList.DEFAULT_CAPACITY];
+	private BitboardPosition position;
+	private int hashMove;
+	private int ply;
+	private boolean capturesOnly;
+	private int stage;
+	/** if the moves of the current stage have been generated */
+	private boolean generated;
+	private int index;
+	private int lastScore;
+
+	public MovePicker(MoveOrdering ordering) {
+		this.ordering = ordering;
+	}
+
+	/** Starts picking the moves of the side to move in <tt>position</tt>, which must not change until the last move is picked
+	 * (moves made with doMove() have to be undone before the next call to next()).
+	 * @param hashMove the move to try first, or PackedMove.NONE. It is skipped if it is not legal in <tt>position</tt>.
+	 * @param capturesOnly only return captures and promotions, as quiescence search wants */
+	public void init(BitboardPosition position,int hashMove,int ply,boolean capturesOnly) {
+		this.position = position;
+		this.hashMove = hashMove;
+		this.ply = ply;
+		this.capturesOnly = capturesOnly;
+		stage = HASH;
+		generated = false;
+	}
+
+	/** Returns the sort key of the move last returned by next(). */
+	public int getLastScore() {
+		return lastScore;
+	}
+
+	/** Returns the best move not returned yet, or PackedMove.NONE when every move has been returned. */
+	public int next() {
+		while(true) {
+			switch(stage) {
+				case HASH:
+					stage = CAPTURES;
+					if (hashMove != PackedMove.NONE && (!capturesOnly || isTactical(hashMove)) && position.isLegal(hashMove)) {
+						lastScore = MoveOrdering.HASH_MOVE;
+						return hashMove;
+					}
+					hashMove = PackedMove.NONE;
+					break;
+				case CAPTURES:
+				case QUIETS:
+					if (!generated) generate();
+					int move = pick();
+					if (move != PackedMove.NONE) return move;
+					generated = false;
+					stage = stage == CAPTURES && !capturesOnly ? QUIETS : DONE;
+					break;
+				default:
+					return PackedMove.NONE;
+			}
+		}
+	}
+
+	private void generate() {
+		if (stage == CAPTURES) {
+			position.generateCaptures(moves);
+		} else {
+			position.generateQuiets(moves);
+		}
+		for(int i=0;i<moves.size();i++) {
+			scores[i] = ordering.score(position, moves.get(i), PackedMove.NONE, ply);
+		}
+		index = 0;
+		generated = true;
+	}
+
+	private static boolean isTactical(int move) {
+		return PackedMove.isCapture(move) || PackedMove.isPromotion(move);
+	}
+
+	/** Selects the best remaining move of the current stage, skipping the hash move already returned. */
+	private int pick() {
+		int size = moves.size();
+		while(index < size) {
+			int best = index;
+			for(int i=index+1;i<size;i++) {
+				if (scores[i] > scores[best]) best = i;
+			}
+			int move = moves.get(best);
+			int score = scores[best];
+			if (best != index) {
+				moves.swap(best, index);
+				scores[best] = scores[index];
+				scores[index] = score;
+			}
+			index++;
+			if (move != hashMove) {
+				lastScore = score;
+				return move;
+			}
+		}
+		return PackedMove.NONE;
+	}
+}
@@ -18,22 +18,24 @@ package board.engine;
 import java.math.BigDecimal;
 import java.util.Random;
 
+import board.BitboardPosition;
+import board.MoveList;
 import board.PositionState;
 
 public class RandomMoveGenerator implements ScoringAlgorithm {
 
 	@Override
 	public Move[] Score(PositionState positionState,boolean white) {
-		// TODO Auto-generated method stub
-		String[] moves = positionState.generateLegalMoves(white);
+		MoveList moves = new MoveList();
+		BitboardPosition b = BitboardPosition.fromPositionState(positionState);
+		b.setWhiteToMove(white);
+		b.generateLegalMoves(moves);
 		
-		Move[] arr = new Move[moves.length];
+		Move[] arr = new Move[moves.size()];
 		final Random random = new Random();
-		for(int i=0;i<moves.length;i++) {
-			arr[i] = new Move();
-			arr[i].setNotation(moves[i]);
+		for(int i=0;i<arr.length;i++) {
 			BigDecimal bd = new BigDecimal(random.nextDouble()*10);
-			arr[i].setScore(bd.setScale(3, BigDecimal.ROUND_HALF_UP).doubleValue());
+			arr[i] = new Move(moves.get(i), bd.setScale(3, BigDecimal.ROUND_HALF_UP).doubleValue());
 		}
 		java.util.Arrays.sort(arr);
 		return arr;
@@ -0,0 +1,224 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import board.BitboardPosition;
+import board.PackedMove;
+
+/** The negamax alpha-beta search done for one AlphaBetaSearch.Score() call.<br />
+ * All the state of a search lives here, so concurrent Score() calls, and the Lazy SMP helpers, each get their own Searcher.
+ * Scores are in centipawns from the point of view of the side to move. */
+class Searcher {
+	static final int INFINITY = 32000;
+	static final int MATE = 31000;
+	static final int MAX_PLY = 128;
+	/** how often (in nodes) the time limit is checked */
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final BitboardPosition position;
+	/** shared with other searches; may be null */
+	private final TranspositionTable table;
+	private final long maxNodes;
+	private final long deadline;
+	private final MoveOrdering ordering = new MoveOrdering(MAX_PLY);
+	private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+	/** set by another thread to stop this search; may be null */
+	private AtomicBoolean stopSignal;
+	private long nodes;
+	private boolean limitsEnabled;
+	private boolean stopped;
+
+	/** @param table transposition table, or null to search without one
+	 * @param maxNodes 0 for no limit
+	 * @param deadline System.nanoTime() to stop at, 0 for no limit */
+	Searcher(BitboardPosition position,TranspositionTable table,long maxNodes,long deadline) {
+		this.position = position;
+		this.table = table;
+		this.maxNodes = maxNodes;
+		this.deadline = deadline;
+		for(int i=0;i<pickers.length;i++) {
+			pickers[i] = new MovePicker(ordering);
+		}
+	}
+
+	long getNodes() {
+		return nodes;
+	}
+
+	boolean isStopped() {
+		return stopped;
+	}
+
+	/** Makes this search stop soon after <tt>stopSignal</tt> is set, once limits are enabled. */
+	void setStopSignal(AtomicBoolean stopSignal) {
+		this.stopSignal = stopSignal;
+	}
+
+	/** The limits are only enforced once enabled, so that at least the first iteration always completes. */
+	void setLimitsEnabled(boolean limitsEnabled) {
+		this.limitsEnabled = limitsEnabled;
+	}
+
+	/** Searches each of <tt>rootMoves</tt> to <tt>depth</tt> and writes its score to <tt>scores</tt>.
+	 * The best move gets its exact score; the others get an upper bound, since they are searched with a window
+	 * that only proves them no better than the best move so far.
+	 * @return false if the search was stopped before every move was searched */
+	boolean searchRoot(int depth,int[] rootMoves,int rootCount,int[] scores) {
+		int alpha = -INFINITY;
+		int bestMove = PackedMove.NONE;
+		for(int i=0;i<rootCount;i++) {
+			position.doMove(rootMoves[i]);
+			int score = -search(depth-1, -INFINITY, -alpha, 1);
+			position.undoMove();
+			if (stopped) return false;
+			scores[i] = score;
+			if (score > alpha) {
+				alpha = score;
+				bestMove = rootMoves[i];
+			}
+		}
+		if (table != null && rootCount > 0) {
+			table.store(position.getZobristKey(), toTable(alpha, 0), depth, TranspositionTable.EXACT, bestMove);
+		}
+		return true;
+	}
+
+	private int search(int depth,int alpha,int beta,int ply) {
+		if (depth <= 0) return quiesce(alpha, beta, ply);
+		if (countNode()) return 0;
+		if (ply >= MAX_PLY-1) return Evaluation.evaluate(position);
+
+		long key = position.getZobristKey();
+		int hashMove = PackedMove.NONE;
+		if (table != null) {
+			long entry = table.probe(key);
+			if (entry != 0) {
+				hashMove = TranspositionTable.move(entry);
+				if (TranspositionTable.depth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+						return score;
+					}
+				}
+			}
+		}
+
+		boolean white = position.isWhitesMove();
+		MovePicker picker = pickers[ply];
+		picker.init(position, hashMove, ply, false);
+
+		int originalAlpha = alpha;
+		int best = -INFINITY;
+		int bestMove = PackedMove.NONE;
+		int searched = 0;
+		int move;
+		while((move = picker.next()) != PackedMove.NONE) {
+			searched++;
+			position.doMove(move);
+			int score = -search(depth-1, -beta, -alpha, ply+1);
+			position.undoMove();
+			if (stopped) return 0;
+			if (score > best) {
+				best = score;
+				if (score > alpha) {
+					alpha = score;
+					bestMove = move;
+					if (alpha >= beta) {
+						if (!PackedMove.isCapture(move) && !PackedMove.isPromotion(move)) ordering.update(white, move, ply, depth);
+						break;
+					}
+				}
+			}
+		}
+		if (searched == 0) {
+			return position.isInCheck(white) ? -MATE+ply : 0;
+		}
+		if (table != null) {
+			int bound = best >= beta ? TranspositionTable.LOWER_BOUND
+				: best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+			table.store(key, toTable(best, ply), depth, bound, bestMove);
+		}
+		return best;
+	}
+
+	/** Mate scores are stored relative to the position instead of the root, so they stay right when
+	 * the position is reached again at a different ply. */
+	private static int toTable(int score,int ply) {
+		if (score >= MATE - MAX_PLY) return score + ply;
+		if (score <= -MATE + MAX_PLY) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score,int ply) {
+		if (score >= MATE - MAX_PLY) return score - ply;
+		if (score <= -MATE + MAX_PLY) return score + ply;
+		return score;
+	}
+
+	/** Searches captures and promotions only, until the position is quiet, so the evaluation is never
+	 * taken in the middle of an exchange. When in check every evasion is searched instead. */
+	private int quiesce(int alpha,int beta,int ply) {
+		if (countNode()) return 0;
+		int standPat = Evaluation.evaluate(position);
+		if (ply >= MAX_PLY-1) return standPat;
+
+		boolean inCheck = position.isInCheck(position.isWhitesMove());
+		int best = -INFINITY;
+		if (!inCheck) {
+			if (standPat >= beta) return standPat;
+			if (standPat > alpha) alpha = standPat;
+			best = standPat;
+		}
+
+		MovePicker picker = pickers[ply];
+		picker.init(position, PackedMove.NONE, ply, !inCheck);
+		int move;
+		while((move = picker.next()) != PackedMove.NONE) {
+			position.doMove(move);
+			int score = -quiesce(-beta, -alpha, ply+1);
+			position.undoMove();
+			if (stopped) return 0;
+			if (score > best) {
+				best = score;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) break;
+				}
+			}
+		}
+		// in check every evasion was tried, so none means mate
+		if (inCheck && best == -INFINITY) return -MATE+ply;
+		return best;
+	}
+
+	/** Counts a node and returns if the search has to stop. */
+	private boolean countNode() {
+		nodes++;
+		if (limitsEnabled && !stopped) {
+			if (maxNodes > 0 && nodes >= maxNodes) {
+				stopped = true;
+			} else if ((nodes % CHECK_INTERVAL) == 0) {
+				stopped = (deadline != 0 && System.nanoTime() - deadline >= 0) || (stopSignal != null && stopSignal.get());
+			}
+		}
+		return stopped;
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import board.PackedMove;
+
+/** A fixed size transposition table of search results keyed by Zobrist key, backed by a long[] and safe to
+ * share between threads and searches without locking.<br /><br />
+ * Each entry is two longs: the key XOR the data, and the data. A reader only accepts an entry if the XOR of both halves
+ * gives back its key, so an entry torn by two threads writing at once reads as a miss.
+ * The data is read with the static methods of this class, the way PackedMove reads moves:<br />
+ * <code>
+ * bits 0-19: best move (see PackedMove)<br />
+ * bits 20-35: score + 32768<br />
+ * bits 36-43: depth<br />
+ * bits 44-45: bound (EXACT, LOWER_BOUND or UPPER_BOUND)<br />
+ * bits 46-53: age
+ * </code>
+ * <p>Entries are grouped in buckets of four. A new entry replaces the one with the same key, or else the one in
+ * its bucket with the lowest depth, where every search since the entry was stored counts as minus four plies.</p>
+ * @see http://www.craftychess.com/hyatt/hashing.html */
+public class TranspositionTable {
+	public static final int DEFAULT_MB = 16;
+
+	public static final int EXACT = 1;
+	/** The score is at least the stored score (the search failed high). */
+	public static final int LOWER_BOUND = 2;
+	/** The score is at most the stored score (the search failed low). */
+	public static final int UPPER_BOUND = 3;
+
+	private static final int BUCKET_SIZE = 4;
+	private static final int AGE_PENALTY = 4;
+
+	private final long[] table;
+	/** mask of the bucket index */
+	private final int mask;
+	private final AtomicInteger age = new AtomicInteger();
+
+	public TranspositionTable() {
+		this(DEFAULT_MB);
+	}
+
+	/** Creates a table using about <tt>megabytes</tt> MB of memory (rounded down to a power of two entries). */
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1) throw new IllegalArgumentException("Size should be at least 1 MB: " + megabytes);
+		long buckets = (long)megabytes * 1024 * 1024 / (16 * BUCKET_SIZE);
+		int size = Integer.highestOneBit((int)Math.min(buckets, 1 << 26));
+		table = new long[size * BUCKET_SIZE * 2];
+		mask = size-1;
+	}
+
+	public static int bound(long entry) {
+		return (int)(entry >>> 44) & 0x3;
+	}
+
+	public static int depth(long entry) {
+		return (int)(entry >>> 36) & 0xFF;
+	}
+
+	/** Returns the best move of the entry, or PackedMove.NONE if it has none. */
+	public static int move(long entry) {
+		return (int)(entry & 0xFFFFF);
+	}
+
+	public static int score(long entry) {
+		return (int)((entry >>> 20) & 0xFFFF) - 32768;
+	}
+
+	private static int age(long entry) {
+		return (int)(entry >>> 46) & 0xFF;
+	}
+
+	public void clear() {
+		java.util.Arrays.fill(table, 0L);
+	}
+
+	/** Returns the number of entries the table can hold. */
+	public int getCapacity() {
+		return (mask+1) * BUCKET_SIZE;
+	}
+
+	/** Returns the permille of entries used, sampled over the first thousand entries, as the UCI "hashfull" is. */
+	public int getUsage() {
+		int n = Math.min(1000, getCapacity()), used = 0;
+		for(int i=0;i<n;i++) {
+			if (table[i*2+1] != 0) used++;
+		}
+		return used * 1000 / n;
+	}
+
+	/** Marks the start of a new search, so entries from earlier searches are replaced first. */
+	public void newSearch() {
+		age.incrementAndGet();
+	}
+
+	/** Returns the entry stored for <tt>key</tt>, or 0 if there is none. Read it with bound(), depth(), move() and score(). */
+	public long probe(long key) {
+		int i = bucket(key);
+		for(int j=0;j<BUCKET_SIZE;j++,i+=2) {
+			long data = table[i+1];
+			if (data != 0 && (table[i] ^ data) == key) return data;
+		}
+		return 0;
+	}
+
+	/** Stores a search result for the position with <tt>key</tt>.
+	 * @param score between -32768 and 32767
+	 * @param depth the depth searched, clamped to 0-255
+	 * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param move the best move found, or PackedMove.NONE to keep the move of an existing entry for the same key */
+	public void store(long key,int score,int depth,int bound,int move) {
+		int currentAge = age.get() & 0xFF;
+		int start = bucket(key);
+		int replace = start;
+		int lowest = Integer.MAX_VALUE;
+		for(int j=0,i=start;j<BUCKET_SIZE;j++,i+=2) {
+			long data = table[i+1];
+			if (data == 0) {
+				if (lowest > Integer.MIN_VALUE) {
+					replace = i;
+					lowest = Integer.MIN_VALUE;
+				}
+				continue;
+			}
+			if ((table[i] ^ data) == key) {
+				if (move == PackedMove.NONE) move = move(data);
+				replace = i;
+				break;
+			}
+			int priority = depth(data) - AGE_PENALTY * ((currentAge - age(data)) & 0xFF);
+			if (priority < lowest) {
+				replace = i;
+				lowest = priority;
+			}
+		}
+		long data = (move & 0xFFFFFL) | ((long)((score + 32768) & 0xFFFF) << 20)
+			| ((long)Math.max(0, Math.min(depth, 255)) << 36) | ((long)bound << 44) | ((long)currentAge << 46);
+		table[replace] = key ^ data;
+		table[replace+1] = data;
+	}
+
+	/** Returns the index in <tt>table</tt> of the first entry of the bucket for <tt>key</tt>. */
+	private int bucket(long key) {
+		return ((int)key & mask) * BUCKET_SIZE * 2;
+	}
+}
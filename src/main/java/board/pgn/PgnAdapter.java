@@ -0,0 +1,37 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import board.BitboardPosition;
+import board.MoveStatus;
+
+/** A PgnListener whose methods do nothing, to extend when only a few of the callbacks are needed. */
+public class PgnAdapter implements PgnListener {
+	public void startGame() {
+	}
+	
+	public void tag(String name,String value) {
+	}
+	
+	public void move(BitboardPosition position,int move) {
+	}
+	
+	public void illegalMove(BitboardPosition position,String move,MoveStatus status) {
+	}
+	
+	public void endGame(BitboardPosition position,String result) {
+	}
+}
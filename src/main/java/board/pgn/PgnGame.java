@@ -0,0 +1,142 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import board.BitboardPosition;
+import board.MoveStatus;
+import board.PackedMove;
+
+/** A game read from PGN and replayed: its tags, its main line as packed moves, the Zobrist key of every position
+ * and its result. A game with an illegal move keeps the moves before it, and getError() tells what went wrong.<br />
+ * Games are built by PgnGameCollector, and by PgnImporter for whole archives.
+ * @see PackedMove */
+public class PgnGame {
+	private long number = -1;
+	private final Map<String,String> tags = new LinkedHashMap<String,String>();
+	/** the FEN tag, or null for the usual starting position */
+	private String startingFen;
+	private int[] moves = new int[64];
+	/** keys[i] is the Zobrist key after i plies */
+	private long[] keys = new long[65];
+	private int plyCount;
+	private String result = "*";
+	private String error;
+	private MoveStatus errorStatus = MoveStatus.OK;
+	
+	void addMove(int move,long key) {
+		if (plyCount == moves.length) {
+			moves = Arrays.copyOf(moves, plyCount*2);
+			keys = Arrays.copyOf(keys, plyCount*2+1);
+		}
+		moves[plyCount++] = move;
+		keys[plyCount] = key;
+	}
+	
+	/** Returns the Zobrist key of the position after <tt>ply</tt> plies (0 for the starting position). */
+	public long getKey(int ply) {
+		if (ply < 0 || ply > plyCount) throw new IndexOutOfBoundsException("Ply " + ply + " of " + plyCount);
+		return keys[ply];
+	}
+	
+	/** Returns the move that could not be played (or a FEN tag that could not be read), or null if every move was legal. */
+	public String getError() {
+		return error;
+	}
+	
+	/** Returns why getError() could not be played, or MoveStatus.OK. */
+	public MoveStatus getErrorStatus() {
+		return errorStatus;
+	}
+	
+	/** Returns the move played at <tt>ply</tt> (0 for the first), packed as by PackedMove. */
+	public int getMove(int ply) {
+		if (ply < 0 || ply >= plyCount) throw new IndexOutOfBoundsException("Ply " + ply + " of " + plyCount);
+		return moves[ply];
+	}
+	
+	/** Returns the moves of the main line, packed as by PackedMove. */
+	public int[] getMoves() {
+		return Arrays.copyOf(moves, plyCount);
+	}
+	
+	/** Returns the number of this game in the order it was read (or given to a GameSink), from 0; -1 if not set. */
+	public long getNumber() {
+		return number;
+	}
+	
+	public int getPlyCount() {
+		return plyCount;
+	}
+	
+	/** Returns the position after <tt>ply</tt> plies, rebuilt by replaying the moves. */
+	public BitboardPosition getPosition(int ply) {
+		if (ply < 0 || ply > plyCount) throw new IndexOutOfBoundsException("Ply " + ply + " of " + plyCount);
+		BitboardPosition position = getStartingPosition();
+		for(int i=0;i<ply;i++) position.doMove(moves[i]);
+		return position;
+	}
+	
+	/** Returns "1-0", "0-1", "1/2-1/2" or "*". */
+	public String getResult() {
+		return result;
+	}
+	
+	public BitboardPosition getStartingPosition() {
+		return startingFen == null ? BitboardPosition.getStartingPosition() : BitboardPosition.parseFromFen(startingFen);
+	}
+	
+	/** Returns the value of the tag <tt>name</tt>, or null if the game does not have it. */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+	
+	/** Returns the tags in the order they were read. */
+	public Map<String,String> getTags() {
+		return tags;
+	}
+	
+	/** Returns if every move of the game could be played. */
+	public boolean isValid() {
+		return error == null;
+	}
+	
+	void setError(String error,MoveStatus status) {
+		this.error = error;
+		this.errorStatus = status;
+	}
+	
+	void setNumber(long number) {
+		this.number = number;
+	}
+	
+	void setResult(String result) {
+		this.result = result;
+	}
+	
+	void setStart(String fen,long key) {
+		startingFen = fen;
+		keys[0] = key;
+	}
+	
+	@Override
+	public String toString() {
+		return "Game " + number + ": " + tags.get("White") + " - " + tags.get("Black") + " " + result + ", " + plyCount + " plies";
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import board.BitboardPosition;
+import board.MoveStatus;
+
+/** A PgnListener that keeps every game it is given as a PgnGame. */
+public class PgnGameCollector implements PgnListener {
+	private static final long STARTING_KEY = BitboardPosition.getStartingPosition().getZobristKey();
+	
+	private final List<PgnGame> games = new ArrayList<PgnGame>();
+	private PgnGame game;
+	private boolean started;
+	
+	/** Returns the games collected so far, in the order they were read. */
+	public List<PgnGame> getGames() {
+		return games;
+	}
+	
+	public void startGame() {
+		game = new PgnGame();
+		started = false;
+	}
+	
+	public void tag(String name,String value) {
+		game.getTags().put(name, value);
+	}
+	
+	public void move(BitboardPosition position,int move) {
+		start(position, 1);
+		game.addMove(move, position.getZobristKey());
+	}
+	
+	public void illegalMove(BitboardPosition position,String move,MoveStatus status) {
+		start(position, 0);
+		game.setError(move, status);
+	}
+	
+	public void endGame(BitboardPosition position,String result) {
+		start(position, 0);
+		game.setResult(result);
+		games.add(game);
+		game = null;
+	}
+	
+	/** Records the starting position of the game, <tt>plies</tt> moves before <tt>position</tt>, the first time it is called for a game. */
+	private void start(BitboardPosition position,int plies) {
+		if (started) return;
+		started = true;
+		String fen = game.getTag("FEN");
+		long key;
+		if (plies == 0) {
+			key = position.getZobristKey();
+		} else {
+			key = fen == null ? STARTING_KEY : BitboardPosition.parseFromFen(fen).getZobristKey();
+		}
+		game.setStart(fen, key);
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/** Imports a PGN archive on several threads.<br />
+ * The calling thread reads the input and cuts it into batches of whole games, at the first tag of a game after the
+ * moves of the one before. Worker threads read each batch with a PgnReader and replay its games into PgnGames,
+ * checking every move and computing the Zobrist key of every position. The games are then handed to a GameSink,
+ * one call at a time, either in the order of the input or (unordered, which keeps every worker busy when a batch
+ * is slow) as soon as their batch is done.
+ * <p>At most <tt>maxBatches</tt> batches are read ahead of the sink, whether waiting for a worker, being replayed or
+ * waiting for an earlier batch to reach the sink, so memory use stays bounded however fast the input can be read.</p>
+ * <p>Call shutdown() when done to stop the worker threads.</p> */
+public class PgnImporter {
+	public static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+	
+	private final ExecutorService pool;
+	private final int threads;
+	private final int maxBatches;
+	private final int batchSize;
+	private final boolean ordered;
+	
+	/** held while an import runs, so only one runs at a time */
+	private final Object importing = new Object();
+	/* state of the running import, guarded by <tt>pending</tt> */
+	private GameSink sink;
+	/** batches done but waiting for an earlier one, by batch number; only used when ordered */
+	private final TreeMap<Long,List<PgnGame>> pending = new TreeMap<Long,List<PgnGame>>();
+	private long nextBatch;
+	private long games;
+	private volatile Throwable failure;
+	/** permits for the batches that may be read ahead of the sink */
+	private Semaphore inFlight;
+	
+	/** Creates an importer with <tt>threads</tt> worker threads that gives the games to the sink in input order,
+	 * with up to four batches per thread read ahead. */
+	public PgnImporter(int threads) {
+		this(threads, threads*4, DEFAULT_BATCH_SIZE, true);
+	}
+	
+	/**
+	 * @param threads the number of worker threads
+	 * @param maxBatches the most batches read ahead of the sink
+	 * @param batchSize the size in bytes a batch is cut at (a batch holds at least one whole game)
+	 * @param ordered true to give the games to the sink in the order of the input */
+	public PgnImporter(int threads,int maxBatches,int batchSize,boolean ordered) {
+		if (threads < 1) throw new IllegalArgumentException("Thread count should be at least 1: " + threads);
+		if (maxBatches < 1) throw new IllegalArgumentException("Batch count should be at least 1: " + maxBatches);
+		if (batchSize < 1) throw new IllegalArgumentException("Batch size should be at least 1: " + batchSize);
+		this.threads = threads;
+		this.maxBatches = maxBatches;
+		this.batchSize = batchSize;
+		this.ordered = ordered;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "pgn-import-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
+	
+	/** Reads every game of <tt>in</tt> and gives it to <tt>sink</tt>, returning when the last one has been given.
+	 * Games are numbered (see PgnGame.getNumber()) in the order the sink gets them. Only one import runs at a time.
+	 * @return the number of games imported
+	 * @throws IllegalStateException if the sink or a worker threw, or the thread was interrupted */
+	public long importGames(InputStream in,GameSink sink) throws IOException {
+		synchronized(importing) {
+			synchronized(pending) {
+				this.sink = sink;
+				pending.clear();
+				nextBatch = 0;
+				games = 0;
+			}
+			failure = null;
+			inFlight = new Semaphore(maxBatches);
+			try {
+				split(in);
+				// every permit back means every batch has reached the sink
+				inFlight.acquire(maxBatches);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while importing", e);
+			}
+			if (failure != null) throw new IllegalStateException("Import failed", failure);
+			synchronized(pending) {
+				return games;
+			}
+		}
+	}
+	
+	/** Stops the worker threads. This instance cannot be used afterwards. */
+	public void shutdown() {
+		pool.shutdown();
+	}
+	
+	/** Reads <tt>in</tt> and submits it batch by batch. */
+	private void split(InputStream in) throws IOException, InterruptedException {
+		byte[] data = new byte[batchSize + batchSize/4];
+		int length = 0;
+		// where the last game starting in data starts, if after 0
+		int boundary = 0;
+		// the scan is at the start of a line
+		boolean lineStart = true;
+		// moves have been seen since the last tag
+		boolean moves = false;
+		long batch = 0;
+		int scanned = 0;
+		for(;;) {
+			if (length == data.length) data = Arrays.copyOf(data, data.length*2);
+			int n = in.read(data, length, data.length-length);
+			if (n < 0) break;
+			length += n;
+			for(;scanned < length;scanned++) {
+				byte c = data[scanned];
+				if (c == '\n') {
+					lineStart = true;
+				} else if (lineStart && c != '\r' && c != ' ' && c != '\t') {
+					lineStart = false;
+					boolean tagLine = c == '[';
+					if (tagLine && moves) boundary = scanned;
+					moves = !tagLine;
+				}
+			}
+			if (length >= batchSize && boundary > 0) {
+				submit(batch++, Arrays.copyOf(data, boundary));
+				System.arraycopy(data, boundary, data, 0, length-boundary);
+				length -= boundary;
+				scanned -= boundary;
+				boundary = 0;
+				if (failure != null) return;
+			}
+		}
+		if (length > 0) submit(batch, Arrays.copyOf(data, length));
+	}
+	
+	private void submit(final long batch,final byte[] data) throws InterruptedException {
+		inFlight.acquire();
+		pool.execute(new Runnable() {
+			public void run() {
+				List<PgnGame> list = null;
+				try {
+					PgnGameCollector collector = new PgnGameCollector();
+					new PgnReader(ByteBuffer.wrap(data)).readAll(collector);
+					list = collector.getGames();
+				} catch (Throwable t) {
+					fail(t);
+				}
+				deliver(batch, list);
+			}
+		});
+	}
+	
+	private void fail(Throwable t) {
+		synchronized(pending) {
+			if (failure == null) failure = t;
+		}
+	}
+	
+	/** Gives the games of <tt>batch</tt> to the sink, or keeps them until the batches before it are given. */
+	private void deliver(long batch,List<PgnGame> list) {
+		synchronized(pending) {
+			if (!ordered) {
+				give(list);
+				return;
+			}
+			pending.put(batch, list);
+			while(!pending.isEmpty() && pending.firstKey() == nextBatch) {
+				give(pending.remove(nextBatch));
+				nextBatch++;
+			}
+		}
+	}
+	
+	/** Gives <tt>list</tt> to the sink, unless the import failed, and lets the reader read one more batch. */
+	private void give(List<PgnGame> list) {
+		try {
+			if (list != null && failure == null) {
+				for(PgnGame game : list) {
+					game.setNumber(games++);
+					sink.accept(game);
+				}
+			}
+		} catch (Throwable t) {
+			fail(t);
+		} finally {
+			inFlight.release();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import board.BitboardPosition;
+import board.MoveStatus;
+
+/** Receives the games read by PgnReader (or GameDatabase), one callback at a time, so a game never has to be held as a whole.<br />
+ * For each game the calls are startGame(), tag() for each tag pair, move() or illegalMove() for the moves of the
+ * main line, and endGame().
+ * @see PgnAdapter */
+public interface PgnListener {
+	/** Called when a game starts, before its tags. */
+	void startGame();
+	
+	/** Called for each tag pair of the game, in the order they appear (eg "White", "Kasparov, Garry"). */
+	void tag(String name,String value);
+	
+	/** Called after each move of the main line has been played on <tt>position</tt>.
+	 * The position belongs to the reader: copy() it to keep it, and do not change it.
+	 * position.getUndoCount() is the number of plies played so far.
+	 * @param move the move just played, packed as by PackedMove */
+	void move(BitboardPosition position,int move);
+	
+	/** Called when a move of the main line cannot be played on <tt>position</tt>. The rest of the moves of the game are skipped.
+	 * @param move the move as it appears in the PGN, or the value of a FEN tag that could not be read
+	 * @param status MALFORMED, ILLEGAL or AMBIGUOUS */
+	void illegalMove(BitboardPosition position,String move,MoveStatus status);
+	
+	/** Called at the end of each game.
+	 * @param position the position after the last move played
+	 * @param result "1-0", "0-1", "1/2-1/2", or "*" if the game is unfinished or its result is missing */
+	void endGame(BitboardPosition position,String result);
+}
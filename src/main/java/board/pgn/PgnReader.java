@@ -0,0 +1,279 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+import board.BitboardPosition;
+import board.MoveParser;
+import board.MoveStatus;
+
+/** Reads games in PGN from a stream and replays the main line of each on a BitboardPosition, passing them to a
+ * PgnListener one move at a time.<br /><br />
+ * The input is read through a fixed size buffer and parsed byte by byte, so memory use does not depend on the size
+ * of a game or of the file: only the current tag or move is kept, and comments, variations and NAGs are skipped as
+ * they are read. Each move is resolved by MoveParser straight from the bytes read, so a legal move allocates nothing.
+ * A tag name, tag value or move longer than MAX_TOKEN bytes is cut short.
+ * Tag values are decoded as UTF-8; everything else in PGN is ASCII.<br /><br />
+ * A game ends at its result ("1-0", "0-1", "1/2-1/2" or "*"), or else at the tags of the next game or the end of
+ * the input. A game with a "FEN" tag starts from that position. Use one reader per stream, from a single thread.
+ * @see http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm */
+public class PgnReader implements Closeable {
+	public static final int MAX_TOKEN = 1024;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int NONE = -2;
+	private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/** null when reading a ByteBuffer given to the constructor */
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	/** the tag name, tag value or move being read */
+	private final byte[] token = new byte[MAX_TOKEN];
+	private int tokenLength;
+	/** <tt>token</tt> seen as characters, for MoveParser */
+	private final CharSequence symbol = new CharSequence() {
+		public char charAt(int index) {
+			return (char)(token[index] & 0xFF);
+		}
+		
+		public int length() {
+			return tokenLength;
+		}
+		
+		public CharSequence subSequence(int start,int end) {
+			return toString().substring(start, end);
+		}
+		
+		@Override
+		public String toString() {
+			return new String(token, 0, tokenLength, LATIN_1);
+		}
+	};
+	/** a byte read ahead and given back, or NONE */
+	private int pushedBack = NONE;
+	private final MoveParser parser = new MoveParser();
+	
+	public PgnReader(InputStream in) {
+		this(Channels.newChannel(in));
+	}
+	
+	public PgnReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+	}
+	
+	/** Reads the games in <tt>data</tt>, from its position to its limit, without copying it. */
+	public PgnReader(ByteBuffer data) {
+		this.channel = null;
+		this.buffer = data;
+	}
+	
+	public void close() throws IOException {
+		if (channel != null) channel.close();
+	}
+	
+	/** Reads every remaining game.
+	 * @return the number of games read */
+	public long readAll(PgnListener listener) throws IOException {
+		long games = 0;
+		while(readGame(listener)) games++;
+		return games;
+	}
+	
+	/** Reads the next game, calling <tt>listener</tt> as it goes.
+	 * @return false if there are no more games */
+	public boolean readGame(PgnListener listener) throws IOException {
+		int c = skipWhitespace();
+		if (c == 0xEF) {
+			// UTF-8 byte order mark
+			read();
+			read();
+			c = skipWhitespace();
+		}
+		if (c < 0) return false;
+		listener.startGame();
+		
+		String fen = null;
+		while(c == '[') {
+			String name = readTagName();
+			String value = readTagValue();
+			if (name.equals("FEN")) fen = value;
+			listener.tag(name, value);
+			c = skipWhitespace();
+		}
+		
+		BitboardPosition position = BitboardPosition.getStartingPosition();
+		boolean skipping = false;
+		if (fen != null) {
+			try {
+				position = BitboardPosition.parseFromFen(fen);
+			} catch (RuntimeException e) {
+				listener.illegalMove(position, fen, MoveStatus.MALFORMED);
+				skipping = true;
+			}
+		}
+		String result = "*";
+		int variations = 0;
+		for(;c >= 0;c = skipWhitespace()) {
+			if (c == '{') {
+				skipTo('}');
+			} else if (c == ';' || c == '%') {
+				skipTo('\n');
+			} else if (c == '(') {
+				variations++;
+			} else if (c == ')') {
+				if (variations > 0) variations--;
+			} else if (c == '[' && variations == 0) {
+				// the tags of the next game, after a game with no result
+				pushedBack = c;
+				break;
+			} else if (c == '*' && variations == 0) {
+				break;
+			} else if (isSymbolStart(c)) {
+				readSymbol(c);
+				if (variations > 0 || isMoveNumber()) continue;
+				String text = getResult();
+				if (text != null) {
+					result = text;
+					break;
+				}
+				if (skipping) continue;
+				int move = parser.parse(position, symbol);
+				if (move >= 0) {
+					position.doMove(move);
+					listener.move(position, move);
+				} else {
+					MoveStatus status = move == MoveParser.AMBIGUOUS ? MoveStatus.AMBIGUOUS : move == MoveParser.ILLEGAL ? MoveStatus.ILLEGAL : MoveStatus.MALFORMED;
+					listener.illegalMove(position, symbol.toString(), status);
+					skipping = true;
+				}
+			}
+			// anything else (move number periods, NAGs, stray annotation marks) is skipped
+		}
+		listener.endGame(position, result);
+		return true;
+	}
+	
+	/** Returns the result the symbol in <tt>token</tt> stands for, or null if it is not a result. */
+	private String getResult() {
+		if (tokenLength == 3 && token[1] == '-') {
+			if (token[0] == '1' && token[2] == '0') return "1-0";
+			if (token[0] == '0' && token[2] == '1') return "0-1";
+		} else if (tokenLength == 7 && symbol.toString().equals("1/2-1/2")) {
+			return "1/2-1/2";
+		}
+		return null;
+	}
+	
+	private boolean isMoveNumber() {
+		for(int i=0;i<tokenLength;i++) {
+			if (token[i] < '0' || token[i] > '9') return false;
+		}
+		return true;
+	}
+	
+	private static boolean isSymbolStart(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+	
+	private static boolean isSymbol(int c) {
+		switch(c) {
+			case '_': case '+': case '#': case '=': case ':': case '-': case '/': case '@': case '!': case '?':
+				return true;
+			default:
+				return isSymbolStart(c);
+		}
+	}
+	
+	private int read() throws IOException {
+		if (pushedBack != NONE) {
+			int c = pushedBack;
+			pushedBack = NONE;
+			return c;
+		}
+		while(!buffer.hasRemaining()) {
+			if (channel == null) return -1;
+			buffer.clear();
+			int n = channel.read(buffer);
+			buffer.flip();
+			if (n < 0) return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+	
+	/** Reads a symbol starting with <tt>c</tt> into <tt>token</tt>. */
+	private void readSymbol(int c) throws IOException {
+		tokenLength = 0;
+		for(;isSymbol(c);c = read()) {
+			if (tokenLength < MAX_TOKEN) token[tokenLength++] = (byte)c;
+		}
+		pushedBack = c;
+	}
+	
+	/** Reads the tag name after a "[". */
+	private String readTagName() throws IOException {
+		int c = skipWhitespace();
+		tokenLength = 0;
+		for(;c >= 0 && c != '"' && c != ']' && c > ' ';c = read()) {
+			if (tokenLength < MAX_TOKEN) token[tokenLength++] = (byte)c;
+		}
+		pushedBack = c;
+		return new String(token, 0, tokenLength, LATIN_1);
+	}
+	
+	/** Reads the quoted tag value and the rest of the tag up to its "]". */
+	private String readTagValue() throws IOException {
+		int c = skipWhitespace();
+		tokenLength = 0;
+		if (c == '"') {
+			for(c = read();c >= 0 && c != '"' && c != '\n';c = read()) {
+				if (c == '\\') c = read();
+				if (c >= 0 && tokenLength < MAX_TOKEN) token[tokenLength++] = (byte)c;
+			}
+		} else {
+			pushedBack = c;
+		}
+		String value = new String(token, 0, tokenLength, UTF_8);
+		skipTo(']');
+		return value;
+	}
+	
+	/** Skips up to and including the next <tt>end</tt>, and returns it (or -1 at the end of the input). */
+	private int skipTo(int end) throws IOException {
+		int c;
+		do {
+			c = read();
+		} while(c >= 0 && c != end);
+		return c;
+	}
+	
+	/** Returns the next byte that is not white space, or -1 at the end of the input. */
+	private int skipWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while(c == ' ' || c == '\t' || c == '\r' || c == '\n');
+		return c;
+	}
+}
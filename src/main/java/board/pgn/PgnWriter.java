@@ -0,0 +1,142 @@
+/**
+ *     javachesslib - A Java Chess Library for multi-use applications.
+ *     Copyright (C) 2012 http://code.google.com/p/javachesslib/
+ *     
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package board.pgn;
+
+import java.io.IOException;
+import java.util.Map;
+
+import board.BitboardPosition;
+import board.Board;
+import board.GameStatus;
+
+/** Writes games in PGN (export format) to an Appendable, such as a Writer or a StringBuilder.<br />
+ * Each game starts with the Seven Tag Roster (with "?" for the tags not given), then the other tags in the order
+ * given, then SetUp and FEN tags if it does not start from the usual position. The moves are written in SAN,
+ * generated from the packed moves with BitboardPosition.appendSan(), in lines of at most 79 characters.<br />
+ * The output is written piece by piece as it is made, without building the game as a String.
+ * Comments and variations are not written. Use one writer from a single thread.
+ * @see http://www.saremba.de/chessgml/standards/pgn/pgn-complete.htm#c8 */
+public class PgnWriter {
+	/** the Seven Tag Roster, which every game starts with */
+	private static final String[] ROSTER = { "Event", "Site", "Date", "Round", "White", "Black", "Result" };
+	private static final String STARTING_FEN = BitboardPosition.getStartingPosition().getFEN();
+	private static final int LINE_LENGTH = 79;
+	
+	private final Appendable out;
+	/** the move number or move being written */
+	private final StringBuilder token = new StringBuilder(16);
+	private int column;
+	
+	public PgnWriter(Appendable out) {
+		this.out = out;
+	}
+	
+	/** Returns the result of a game as PGN gives it: "1-0", "0-1", "1/2-1/2", or "*" if it is not over. */
+	public static String getResult(Board board) {
+		GameStatus status = board.getGameStatus();
+		if (status == GameStatus.CHECKMATE) return board.isWhiteToMove() ? "0-1" : "1-0";
+		return status.isGameOver() ? "1/2-1/2" : "*";
+	}
+	
+	/** Writes a game read from PGN (eg by PgnImporter). */
+	public void write(PgnGame game) throws IOException {
+		write(game.getTags(), game.getStartingPosition(), game.getMoves(), game.getPlyCount(), game.getResult());
+	}
+	
+	/** Writes the game played on <tt>board</tt>.
+	 * @param tags the tags to write, or null. Without a "Result" tag the result is taken from the board (see getResult()).
+	 * @throws IllegalArgumentException if a piece was dropped, which PGN cannot write */
+	public void write(Board board,Map<String,String> tags) throws IOException {
+		int[] moves = board.getPackedMoves();
+		if (moves == null) throw new IllegalArgumentException("A game with piece drops cannot be written as PGN");
+		String result = tags == null ? null : tags.get("Result");
+		write(tags, BitboardPosition.fromPositionState(board.getPosition(0)), moves, moves.length, result == null ? getResult(board) : result);
+	}
+	
+	/** Writes a game.
+	 * @param tags the tags to write, or null
+	 * @param start the position the game starts from, which is not changed
+	 * @param moves the moves of the game, packed as by PackedMove; the first <tt>count</tt> are written
+	 * @param result "1-0", "0-1", "1/2-1/2" or "*" */
+	public void write(Map<String,String> tags,BitboardPosition start,int[] moves,int count,String result) throws IOException {
+		for(String name : ROSTER) {
+			String value = name.equals("Result") ? result : tags == null ? null : tags.get(name);
+			if (value == null) value = name.equals("Date") ? "????.??.??" : "?";
+			writeTag(name, value);
+		}
+		String fen = start.getFEN();
+		boolean setUp = !fen.equals(STARTING_FEN);
+		if (tags != null) {
+			for(Map.Entry<String,String> e : tags.entrySet()) {
+				String name = e.getKey();
+				if (isRosterTag(name) || (setUp && (name.equals("SetUp") || name.equals("FEN")))) continue;
+				writeTag(name, e.getValue());
+			}
+		}
+		if (setUp) {
+			writeTag("SetUp", "1");
+			writeTag("FEN", fen);
+		}
+		out.append('\n');
+		
+		BitboardPosition position = start.copy();
+		column = 0;
+		for(int i=0;i<count;i++) {
+			boolean white = position.isWhitesMove();
+			if (white || i == 0) {
+				token.setLength(0);
+				token.append(position.getFullMoveNumber()).append(white ? "." : "...");
+				writeToken(token);
+			}
+			token.setLength(0);
+			position.appendSan(moves[i], token);
+			writeToken(token);
+			position.doMove(moves[i]);
+		}
+		writeToken(result);
+		out.append("\n\n");
+	}
+	
+	private static boolean isRosterTag(String name) {
+		for(String tag : ROSTER) {
+			if (tag.equals(name)) return true;
+		}
+		return false;
+	}
+	
+	private void writeTag(String name,String value) throws IOException {
+		out.append('[').append(name).append(" \"");
+		for(int i=0;i<value.length();i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') out.append('\\');
+			out.append(c);
+		}
+		out.append("\"]\n");
+	}
+	
+	/** Writes <tt>t</tt> after a space, or on a new line if it would not fit on the current one. */
+	private void writeToken(CharSequence t) throws IOException {
+		if (column > 0 && column + 1 + t.length() > LINE_LENGTH) {
+			out.append('\n');
+			column = 0;
+		} else if (column > 0) {
+			out.append(' ');
+			column++;
+		}
+		out.append(t);
+		column += t.length();
+	}
+}
@@ -87,35 +87,74 @@ public class test {
 		System.out.println(java.util.Arrays.toString(moves));*/
 		//System.exit(0);
 		
-		System.out.println("testMoveIsMade: " + testMoveIsMade());
-		System.out.println("testGetPiece: " + testGetPiece());
-		System.out.println("testIsPieceOnSquare: " + testIsPieceOnSquare());
-		System.out.println("testSquaresBetweenHorizontal: " + testSquaresBetweenHorizontal());
-		System.out.println("testSquaresBetweenVertical: " + testSquaresBetweenVertical());
-		System.out.println("testSquaresBetweenDiagonal: " + testSquaresBetweenDiagonal());
-		System.out.println("testKingMoves: " + testKingMoves());
-		System.out.println("testRookMoves: " + testRookMoves());
-		System.out.println("testBishopMoves: " + testBishopMoves());
-		System.out.println("testKnightMoves: " + testKnightMoves());
-		System.out.println("testPawnMoves: " + testPawnMoves());
-		System.out.println("testGetInternalCoordsOfSquare: " + testGetInternalCoordsOfSquare());
-		System.out.println("testGetAllSquaresWithPiece: " + testGetAllSquaresWithPiece());
-		System.out.println("testGetPiecesThatCanGoToSquare: " + testGetPiecesThatCanGoToSquare());
-		System.out.println("testParseFromFEN: " + testParseFromFEN());
-		System.out.println("testGetPiecesOnFile: " + testGetPiecesOnFile());
-		System.out.println("testGetPiecesOnRank: " + testGetPiecesOnRank());
-		System.out.println("testIsPiecePinned: " + testIsPiecePinned());
-		System.out.println("testDirectionBetween: " + testDirectionBetween());
-		System.out.println("testGetPieceLocations: " + testGetPieceLocations());
-		System.out.println("testGetAdjacentSquares: " + testGetAdjacentSquares());
-		System.out.println("testIsCheckmate: " + testIsCheckmate());
-		System.out.println("testGetFEN: " + testGetFEN());
-		System.out.println("testFilterSquares: " + testFilterSquares());
-		System.out.println("testIsWhitesMove: " + testIsWhitesMove());
-		System.out.println("testIsValidSquare: " + testIsValidSquare());
-		System.out.println("testIsAdjacentSquare: " + testIsAdjacentSquare());
-		System.out.println("testIsKingAttackingSquare: " + testIsKingAttackingSquare());
-		System.out.println("testIsWhiteColoredSquare: " + testIsWhiteColoredSquare());
+		run("testMoveIsMade");
+		run("testGetPiece");
+		run("testIsPieceOnSquare");
+		run("testSquaresBetweenHorizontal");
+		run("testSquaresBetweenVertical");
+		run("testSquaresBetweenDiagonal");
+		run("testKingMoves");
+		run("testRookMoves");
+		run("testBishopMoves");
+		run("testKnightMoves");
+		run("testPawnMoves");
+		run("testGetInternalCoordsOfSquare");
+		run("testGetAllSquaresWithPiece");
+		run("testGetPiecesThatCanGoToSquare");
+		run("testParseFromFEN");
+		run("testGetPiecesOnFile");
+		run("testGetPiecesOnRank");
+		run("testIsPiecePinned");
+		run("testDirectionBetween");
+		run("testGetPieceLocations");
+		run("testGetAdjacentSquares");
+		run("testIsCheckmate");
+		run("testGetFEN");
+		run("testFilterSquares");
+		run("testIsWhitesMove");
+		run("testIsValidSquare");
+		run("testIsAdjacentSquare");
+		run("testIsKingAttackingSquare");
+		run("testIsWhiteColoredSquare");
+		run("testBitboardPosition");
+		run("testHasLegalMove");
+		run("testZobristKey");
+		run("testPerft");
+		run("testParallelPerft");
+		run("testAlphaBetaSearch");
+		run("testTranspositionTable");
+		run("testLazySmp");
+		run("testMoveOrdering");
+		run("testMovePicker");
+		run("testRandomMoveGenerator");
+		run("testGameStatus");
+		run("testRepetition");
+		run("testTryMove");
+		run("testIsSameFile");
+		run("testBoardHistory");
+		run("testRollback");
+		run("testParseTakeback");
+		run("testPgnReader");
+		run("testPgnImporter");
+		run("testPgnWriter");
+		run("testGameDatabase");
+		run("testGameDatabaseDictionary");
+		run("testPositionIndex");
+		run("testPositionIndexMerge");
+	}
+	
+	/** Runs the test method <tt>name</tt> and prints its result. A test that throws counts as failed and the
+	 * following tests still run. */
+	private static void run(String name) {
+		String result;
+		try {
+			result = String.valueOf(test.class.getDeclaredMethod(name).invoke(null));
+		} catch (java.lang.reflect.InvocationTargetException e) {
+			result = "false (" + e.getCause() + ")";
+		} catch (Exception e) {
+			result = "false (" + e + ")";
+		}
+		System.out.println(name + ": " + result);
 	}
 	
 //	private static int squareTo0x88(String square) {
@@ -352,4 +391,576 @@ public class test {
 		}
 		return pass;
 	}
+	
+	private static boolean testBitboardPosition() {
+		String fen = "r4r2/ppp1Np1p/8/3BpN2/4P2P/3PPB1k/PPP3P1/R4RK1 b - - 0 26";
+		BitboardPosition b = BitboardPosition.parseFromFen(fen);
+		BitboardPosition start = BitboardPosition.fromPositionState(PositionState.getStartingPositionState());
+		// Kiwipete has 48 legal moves, including both castles and a pinned-piece-free en passant-less position
+		BitboardPosition kiwipete = BitboardPosition.parseFromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		return b.getFEN().equals(fen) && b.isInCheck(false) && b.generateLegalMoves(false).length == 0 &&
+			start.generateLegalMoves(true).length == 20 && !start.isInCheck(true) &&
+			kiwipete.generateLegalMoves(true).length == 48 &&
+			java.util.Arrays.toString(start.getAttackers("f3")).equals("[G1, E2, G2]");
+	}
+	
+	private static boolean testZobristKey() {
+		PositionState s = PositionState.parseFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+		long start = s.getZobristKey();
+		if (start != BitboardPosition.getStartingPosition().getZobristKey()) return false;
+		// knights out and back is the same position again
+		s.makeMove("g1","f3",null); s.makeMove("g8","f6",null);
+		s.makeMove("f3","g1",null); s.makeMove("f6","g8",null);
+		if (s.getZobristKey() != start) return false;
+		s.makeMove("e2","e4",null);
+		if (s.getZobristKey() == start || s.getZobristKey() != s.computeZobristKey()) return false;
+		
+		BitboardPosition b = BitboardPosition.parseFromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		long key = b.getZobristKey();
+		MoveList moves = new MoveList();
+		b.generateLegalMoves(moves);
+		for(int i=0;i<moves.size();i++) {
+			b.doMove(moves.get(i));
+			boolean ok = b.getZobristKey() == b.computeZobristKey()
+				&& b.getZobristKey() == PositionState.parseFromFen(b.getFEN()).getZobristKey();
+			b.undoMove();
+			if (!ok || b.getZobristKey() != key) return false;
+		}
+		return true;
+	}
+	
+	private static boolean testPerft() {
+		PositionState s = PositionState.getStartingPositionState();
+		return s.perft(3) == 8902 && s.divide(2).get("e2e4") == 20L && s.divide(2).size() == 20;
+	}
+	
+	private static boolean testParallelPerft() {
+		String[] fens = { "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1" };
+		ParallelPerft perft = new ParallelPerft(4, 1);
+		boolean ok = true;
+		try {
+			for(String fen : fens) {
+				BitboardPosition position = BitboardPosition.parseFromFen(fen);
+				for(int depth=1;depth<=4;depth++) {
+					long serial = position.perft(depth);
+					// twice, the second time with the hash table filled by the first
+					ok &= perft.perft(position, depth) == serial && perft.perft(position, depth) == serial;
+				}
+				ok &= position.getFEN().equals(fen);
+			}
+			return ok && perft.perft(BitboardPosition.getStartingPosition(), 4) == 197281;
+		} finally {
+			perft.shutdown();
+		}
+	}
+	
+	private static boolean testAlphaBetaSearch() {
+		// back rank mate in one, and a free queen
+		board.engine.Move[] mate = new board.engine.AlphaBetaSearch(3).Score(PositionState.parseFromFen("6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1"), true);
+		board.engine.Move[] queen = new board.engine.AlphaBetaSearch(3).Score(PositionState.parseFromFen("4k3/8/8/3q4/8/2N5/8/4K3 w - - 0 1"), true);
+		return mate[0].getNotation().equals("d1d8") && mate[0].getScore() > 300 && queen[0].getNotation().equals("c3d5");
+	}
+	
+	private static boolean testTranspositionTable() {
+		board.engine.TranspositionTable table = new board.engine.TranspositionTable(1);
+		long key = 0x123456789ABCDEF5L;
+		int move = PackedMove.encode(12, 28, 0, PackedMove.DOUBLE_PUSH);
+		table.store(key, -150, 6, board.engine.TranspositionTable.LOWER_BOUND, move);
+		long entry = table.probe(key);
+		boolean ok = board.engine.TranspositionTable.score(entry) == -150 && board.engine.TranspositionTable.depth(entry) == 6 &&
+			board.engine.TranspositionTable.bound(entry) == board.engine.TranspositionTable.LOWER_BOUND &&
+			board.engine.TranspositionTable.move(entry) == move && table.probe(key ^ 1L << 40) == 0;
+		// storing the same key again without a move keeps the move
+		table.store(key, 20, 7, board.engine.TranspositionTable.EXACT, PackedMove.NONE);
+		entry = table.probe(key);
+		ok &= board.engine.TranspositionTable.move(entry) == move && board.engine.TranspositionTable.depth(entry) == 7;
+		
+		// keys a multiple of the bucket count apart share a bucket of four; the shallowest entry goes first
+		long buckets = table.getCapacity() / 4;
+		long[] keys = new long[5];
+		for(int i=0;i<keys.length;i++) keys[i] = key + (i+1)*buckets;
+		table.clear();
+		int[] depths = { 4, 1, 3, 2 };
+		for(int i=0;i<4;i++) table.store(keys[i], i, depths[i], board.engine.TranspositionTable.EXACT, move);
+		table.store(keys[4], 4, 2, board.engine.TranspositionTable.EXACT, move);
+		ok &= table.probe(keys[1]) == 0 && table.probe(keys[0]) != 0 && table.probe(keys[2]) != 0 && table.probe(keys[3]) != 0 && table.probe(keys[4]) != 0;
+		// entries of an earlier search count as 4 plies shallower, so even a depth 1 entry replaces them
+		table.newSearch();
+		table.store(keys[1], 1, 1, board.engine.TranspositionTable.EXACT, move);
+		ok &= table.probe(keys[1]) != 0 && table.probe(keys[4]) == 0 && table.probe(keys[3]) != 0;
+		
+		// an entry whose halves come from two writes is not returned
+		try {
+			java.lang.reflect.Field field = board.engine.TranspositionTable.class.getDeclaredField("table");
+			field.setAccessible(true);
+			long[] data = (long[])field.get(table);
+			for(int i=0;i<data.length;i+=2) {
+				if ((data[i] ^ data[i+1]) == keys[0]) data[i+1] ^= 1L << 20;
+			}
+		} catch (Exception e) {
+			return false;
+		}
+		return ok && table.probe(keys[0]) == 0 && table.probe(keys[2]) != 0;
+	}
+	
+	private static boolean testLazySmp() {
+		String[] fens = { "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1", "4k3/8/8/3q4/8/2N5/8/4K3 w - - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1" };
+		board.engine.AlphaBetaSearch smp = new board.engine.AlphaBetaSearch(4);
+		smp.setThreads(4);
+		boolean ok = smp.getThreads() == 4;
+		try {
+			for(int i=0;i<fens.length;i++) {
+				String fen = fens[i];
+				board.engine.AlphaBetaSearch single = new board.engine.AlphaBetaSearch(4);
+				board.engine.Move[] expected = single.score(BitboardPosition.parseFromFen(fen));
+				// several runs, since the helper threads race for the shared table
+				for(int run=0;run<3;run++) {
+					BitboardPosition position = BitboardPosition.parseFromFen(fen);
+					board.engine.Move[] moves = smp.score(position);
+					ok &= moves.length == expected.length && smp.getLastDepth() == single.getLastDepth() && position.getFEN().equals(BitboardPosition.parseFromFen(fen).getFEN());
+					// Kiwipete has no single best move, so only the move count is checked there
+					if (i < 2) ok &= moves[0].getMove() == expected[0].getMove() && moves[0].getScore() == expected[0].getScore();
+				}
+			}
+		} finally {
+			smp.shutdown();
+		}
+		return ok;
+	}
+	
+	private static boolean testMoveOrdering() {
+		BitboardPosition position = BitboardPosition.parseFromFen("7k/1P5p/8/3q4/2P1Q3/8/8/4K3 w - - 0 1");
+		int pawnTakesQueen = position.toPackedMove(26, 35, 0), queenTakesQueen = position.toPackedMove(28, 35, 0);
+		int queenTakesPawn = position.toPackedMove(28, 55, 0);
+		int queen = position.toPackedMove(49, 57, PackedMove.QUEEN), knight = position.toPackedMove(49, 57, PackedMove.KNIGHT);
+		int kf2 = position.toPackedMove(4, 13, 0), ke2 = position.toPackedMove(4, 12, 0);
+		board.engine.MoveOrdering ordering = new board.engine.MoveOrdering(8);
+		ordering.clear();
+		// most valuable victim first, then least valuable attacker; a queen promotion counts as winning a queen
+		boolean ok = ordering.score(position, queen, PackedMove.NONE, 0) > ordering.score(position, pawnTakesQueen, PackedMove.NONE, 0) &&
+			ordering.score(position, pawnTakesQueen, PackedMove.NONE, 0) > ordering.score(position, queenTakesQueen, PackedMove.NONE, 0) &&
+			ordering.score(position, queenTakesQueen, PackedMove.NONE, 0) > ordering.score(position, queenTakesPawn, PackedMove.NONE, 0) &&
+			ordering.score(position, queenTakesPawn, PackedMove.NONE, 0) > ordering.score(position, knight, PackedMove.NONE, 0) &&
+			ordering.score(position, ke2, ke2, 0) > ordering.score(position, queen, PackedMove.NONE, 0);
+		// killers come after every capture and before the other quiet moves; the newest killer first
+		ordering.update(true, kf2, 0, 3);
+		ok &= ordering.isKiller(0, kf2) && !ordering.isKiller(1, kf2) && ordering.getHistory(true, kf2) == 9;
+		ok &= ordering.score(position, kf2, PackedMove.NONE, 0) < ordering.score(position, knight, PackedMove.NONE, 0) &&
+			ordering.score(position, kf2, PackedMove.NONE, 0) > ordering.score(position, ke2, PackedMove.NONE, 0);
+		ordering.update(true, ke2, 0, 2);
+		ok &= ordering.score(position, ke2, PackedMove.NONE, 0) > ordering.score(position, kf2, PackedMove.NONE, 0) && ordering.isKiller(0, kf2);
+		// at another ply only the history counts
+		return ok && ordering.score(position, kf2, PackedMove.NONE, 1) == 9 && ordering.score(position, ke2, PackedMove.NONE, 1) == 4;
+	}
+	
+	private static boolean testMovePicker() {
+		BitboardPosition position = BitboardPosition.parseFromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		MoveList legal = new MoveList();
+		position.generateLegalMoves(legal);
+		java.util.Set<Integer> expected = new java.util.HashSet<Integer>();
+		for(int i=0;i<legal.size();i++) expected.add(legal.get(i));
+		int hashMove = position.toPackedMove(11, 20, 0);
+		board.engine.MovePicker picker = new board.engine.MovePicker(new board.engine.MoveOrdering(8));
+		
+		// the (quiet) hash move first, then the captures best first, then the quiet moves, each move once
+		picker.init(position, hashMove, 0, false);
+		java.util.Set<Integer> picked = new java.util.HashSet<Integer>();
+		boolean ok = picker.next() == hashMove && expected.contains(hashMove);
+		picked.add(hashMove);
+		boolean quiets = false;
+		int last = Integer.MAX_VALUE;
+		for(int move;(move = picker.next()) != PackedMove.NONE;) {
+			ok &= picked.add(move) && move != hashMove;
+			boolean tactical = PackedMove.isCapture(move) || PackedMove.isPromotion(move);
+			if (!tactical && !quiets) {
+				quiets = true;
+				last = Integer.MAX_VALUE;
+			}
+			ok &= tactical != quiets && picker.getLastScore() <= last;
+			last = picker.getLastScore();
+		}
+		ok &= picked.equals(expected);
+		
+		// captures only: a quiet hash move is left out, and so is one that is not legal here
+		int captures = 0;
+		picker.init(position, hashMove, 0, true);
+		for(int move;(move = picker.next()) != PackedMove.NONE;captures++) {
+			ok &= PackedMove.isCapture(move) || PackedMove.isPromotion(move);
+		}
+		picker.init(position, position.toPackedMove(0, 16, 0), 0, false);
+		int count = 0;
+		while(picker.next() != PackedMove.NONE) count++;
+		return ok && captures == 8 && count == expected.size();
+	}
+	
+	private static boolean testRandomMoveGenerator() {
+		// en passant is white's only move; as in a Board, the position records the side that just moved
+		PositionState ps = PositionState.parseFromFen("5r2/8/8/3pP3/4K3/8/8/k1br4 w - d6 0 1");
+		ps.setWhitesMove(false);
+		board.engine.Move[] moves = new board.engine.RandomMoveGenerator().Score(ps, true);
+		return moves.length == 1 && moves[0].getNotation().equals("e5d6");
+	}
+	
+	private static boolean testHasLegalMove() {
+		return BitboardPosition.getStartingPosition().hasLegalMove(true) &&
+			!BitboardPosition.parseFromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").hasLegalMove(false) &&
+			!BitboardPosition.parseFromFen("3R2k1/5ppp/8/8/8/8/5PPP/6K1 b - - 0 1").hasLegalMove(false) &&
+			// en passant is the only way out of check, and only while the pawn can still be taken
+			BitboardPosition.parseFromFen("5r2/8/8/3pP3/4K3/8/8/k1br4 w - d6 0 1").hasLegalMove(true) &&
+			!BitboardPosition.parseFromFen("5r2/8/8/3pP3/4K3/8/8/k1br4 w - - 0 1").hasLegalMove(true) &&
+			// a pinned rook can move along its pin, a pinned knight cannot
+			!BitboardPosition.parseFromFen("k7/8/8/8/3b4/1p6/1N1n4/K7 w - - 0 1").hasLegalMove(true) &&
+			BitboardPosition.parseFromFen("k7/r7/8/8/8/2nn4/R7/K7 w - - 0 1").hasLegalMove(true);
+	}
+	
+	private static boolean testGameStatus() {
+		Board b = new Board();
+		// a promotion without a capture is still a pawn move, so it resets the half move clock
+		Board promotion = new Board();
+		try {
+			for(String move : new String[] { "f3", "e5", "g4", "Qh4" }) b.move(b.isWhiteToMove(), move);
+			for(String move : new String[] { "h4", "g5", "hxg5", "h6", "gxh6", "Nf6", "h7", "Rg8", "h8=Q" }) promotion.move(promotion.isWhiteToMove(), move);
+		} catch (Exception e) {
+			return false;
+		}
+		return b.getGameStatus() == GameStatus.CHECKMATE && promotion.getLatestMove().getNumHalfMoves() == 0 &&
+			b.getLatestMove().isGameOver() && !PositionState.parseFromFen("7k/5Q2/6K1/8/8/8/8/8 w - - 0 1").isGameOver() &&
+			PositionState.parseFromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").isGameOver() &&
+			PositionState.parseFromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").getGameStatus(false) == GameStatus.STALEMATE &&
+			PositionState.parseFromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1").getGameStatus(true) == GameStatus.ONGOING &&
+			PositionState.parseFromFen("8/8/4k3/8/2b5/8/4B3/4K3 w - - 0 1").getGameStatus(true) == GameStatus.INSUFFICIENT_MATERIAL &&
+			PositionState.parseFromFen("8/8/4k3/8/2b5/8/4KB2/8 w - - 0 1").getGameStatus(true) == GameStatus.ONGOING &&
+			PositionState.parseFromFen("8/8/4k3/8/8/8/4KR2/8 w - - 100 80").getGameStatus(true) == GameStatus.FIFTY_MOVE_RULE &&
+			PositionState.getStartingPositionState().getGameStatus(true) == GameStatus.ONGOING;
+	}
+	
+	private static boolean testRepetition() {
+		Board b = new Board();
+		boolean ok = true;
+		try {
+			for(int i=0;i<2;i++) {
+				for(String move : new String[] { "Nf3", "Nf6", "Ng1", "Ng8" }) b.move(b.isWhiteToMove(), move);
+				ok &= b.getRepetitionCount() == i+2;
+			}
+			ok &= b.getGameStatus() == GameStatus.REPETITION && b.getGameStatus().isClaimable() && !b.getGameStatus().isGameOver();
+			b.move(true, "e4");
+			ok &= b.getRepetitionCount() == 1 && b.getGameStatus() == GameStatus.ONGOING;
+			// the counted stretch starts at a quiet promotion, which resets the half move clock
+			Board promotion = new Board();
+			for(String move : new String[] { "h4", "g5", "hxg5", "h6", "gxh6", "Nf6", "h7", "Rg8", "h8=Q" }) promotion.move(promotion.isWhiteToMove(), move);
+			for(int i=0;i<2;i++) {
+				for(String move : new String[] { "Nc6", "Nc3", "Nb8", "Nb1" }) promotion.move(promotion.isWhiteToMove(), move);
+			}
+			ok &= promotion.getLatestMove().getNumHalfMoves() == 8 && promotion.getRepetitionCount() == 3 &&
+				promotion.getGameStatus() == GameStatus.REPETITION;
+		} catch (Exception e) {
+			return false;
+		}
+		return ok;
+	}
+	
+	private static boolean testTryMove() {
+		Board b = new Board();
+		boolean ok = b.tryMove("e4").getStatus() == MoveStatus.OK && b.tryMove(true, "d4").getStatus() == MoveStatus.WRONG_COLOR;
+		ok &= b.tryMove("e4").getStatus() == MoveStatus.ILLEGAL && b.tryMove("e9").getStatus() == MoveStatus.MALFORMED;
+		ok &= b.tryMove("Nc6").getStatus() == MoveStatus.OK && b.tryMove("Nc3").getStatus() == MoveStatus.OK && b.tryMove("Nf6").getStatus() == MoveStatus.OK;
+		ok &= b.validate(true, "Ne2") == MoveStatus.AMBIGUOUS && b.validate(true, "Ne6") == MoveStatus.ILLEGAL && b.validate(true, "Nge2") == MoveStatus.OK;
+		// move() refuses an ambiguous move quietly
+		java.io.PrintStream err = System.err;
+		java.io.ByteArrayOutputStream printed = new java.io.ByteArrayOutputStream();
+		System.setErr(new java.io.PrintStream(printed));
+		try {
+			ok &= !b.move(true, "Ne2");
+		} catch (Exception e) {
+			ok = false;
+		} finally {
+			System.setErr(err);
+		}
+		ok &= printed.size() == 0;
+		ok &= b.getPlyCount() == 4 && b.tryMove("Nge2").getStatus() == MoveStatus.OK;
+		ok &= b.getPlyCount() == 5 && b.getLatestMove().getPrettyNotation().equals("Nge2");
+		// the move result carries the status of the game after it, including a draw that can now be claimed
+		Board repetition = new Board();
+		MoveResult result = null;
+		for(int i=0;i<2;i++) {
+			for(String move : new String[] { "Nf3", "Nf6", "Ng1", "Ng8" }) result = repetition.tryMove(move);
+		}
+		ok &= result.isLegal() && result.getGameStatus() == GameStatus.REPETITION && result.isClaimable();
+		result = repetition.tryMove("e4");
+		ok &= result.getGameStatus() == GameStatus.ONGOING && !result.isClaimable();
+		result = repetition.tryMove("e4");
+		ok &= result.getStatus() == MoveStatus.ILLEGAL && result.getGameStatus() == null && !result.isClaimable();
+		Board mate = new Board();
+		for(String move : new String[] { "f3", "e5", "g4", "Qh4#" }) result = mate.tryMove(move);
+		return ok && result.getGameStatus() == GameStatus.CHECKMATE && result.getGameStatus() == mate.getGameStatus();
+	}
+	
+	private static boolean testIsSameFile() {
+		boolean ok = PositionState.isSameFile("e2", "e4") && PositionState.isSameFile("a8", "a1") && PositionState.isSameRankOrFile("h1", "h8");
+		// a step of 0xF on the 0x88 board is the b1-a2 diagonal, which isSameFile() took for a file
+		ok &= !PositionState.isSameFile("b1", "a2") && !PositionState.isSameFile("c1", "a3") && !PositionState.isSameFile("a1", "b2");
+		Board b = new Board();
+		try {
+			for(String move : new String[] { "e4", "Nf6", "e5", "d5" }) b.move(b.isWhiteToMove(), move);
+			ok &= b.getLatestMove().getEnpassantSquare().equals("d6");
+			return ok && b.move(true, "exd6") && b.getLatestMove().getPiece("d5") == Piece.EMPTY;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
+	/** Morphy - Duke Karl / Count Isouard, Paris 1858: 33 half moves, more than one checkpoint interval */
+	private static final String[] OPERA_GAME = { "e4", "e5", "Nf3", "d6", "d4", "Bg4", "dxe5", "Bxf3", "Qxf3", "dxe5", "Bc4", "Nf6",
+		"Qb3", "Qe7", "Nc3", "c6", "Bg5", "b5", "Nxb5", "cxb5", "Bxb5+", "Nbd7", "O-O-O", "Rd8", "Rxd7", "Rxd7", "Rd1", "Qe6",
+		"Bxd7+", "Nxd7", "Qb8+", "Nxb8", "Rd8#" };
+	
+	private static boolean testBoardHistory() {
+		Board b = new Board();
+		String[] fens = new String[OPERA_GAME.length+1];
+		fens[0] = b.getLatestMove().getFEN();
+		try {
+			for(int i=0;i<OPERA_GAME.length;i++) {
+				if (!b.move(b.isWhiteToMove(), OPERA_GAME[i])) return false;
+				fens[i+1] = b.getLatestMove().getFEN();
+			}
+		} catch (Exception e) {
+			return false;
+		}
+		boolean ok = b.getPlyCount() == OPERA_GAME.length;
+		for(int pass=0;pass<2;pass++) {
+			for(int i=0;i<fens.length;i++) {
+				ok &= b.getPosition(i).getFEN().equals(fens[i]);
+			}
+			java.util.List<PositionState> positions = b.getPositions();
+			ok &= positions.size() == fens.length;
+			for(int i=0;i<positions.size();i++) {
+				ok &= positions.get(i).getFEN().equals(fens[i]);
+			}
+			b.cleanup();
+		}
+		// the latest position comes back as a copy too
+		b.getPosition(b.getPlyCount()).placePiece(Piece.WHITE_QUEEN,"A1");
+		return ok && b.getLatestMove().getFEN().equals(fens[fens.length-1]);
+	}
+	
+	private static boolean testRollback() {
+		Board b = new Board();
+		String[] fens = new String[OPERA_GAME.length+1];
+		fens[0] = b.getLatestMove().getFEN();
+		try {
+			for(int i=0;i<OPERA_GAME.length;i++) {
+				b.move(b.isWhiteToMove(), OPERA_GAME[i]);
+				fens[i+1] = b.getLatestMove().getFEN();
+			}
+			b.rollback(5);
+			boolean ok = b.getPlyCount() == 28 && b.getLatestMove().getFEN().equals(fens[28]) && b.isWhiteToMove();
+			ok &= b.takeback() && b.getLatestMove().getFEN().equals(fens[27]) && !b.isWhiteToMove();
+			b.cleanup();
+			b.rollback(3);
+			ok &= b.getPlyCount() == 24 && b.getLatestMove().getFEN().equals(fens[24]);
+			// the game goes on from the rolled back position
+			for(int i=24;i<OPERA_GAME.length;i++) {
+				ok &= b.move(b.isWhiteToMove(), OPERA_GAME[i]) && b.getLatestMove().getFEN().equals(fens[i+1]);
+			}
+			ok &= b.getGameStatus() == GameStatus.CHECKMATE && b.getLatestMove().getPrettyNotation().equals("Rd8#");
+			b.rollback(100);
+			ok &= b.getPlyCount() == 0 && b.getLatestMove().getFEN().equals(fens[0]) && !b.takeback();
+			return ok && b.move(true, "e4") && b.getLatestMove().getFEN().equals(fens[1]);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
+	private static boolean testParseTakeback() {
+		return board.cli.Runner.parseTakeback("takeback") == 1 && board.cli.Runner.parseTakeback("takeback 3") == 3 &&
+			board.cli.Runner.parseTakeback("takeback  12 ") == 12 && board.cli.Runner.parseTakeback("takeback 0") == -1 &&
+			board.cli.Runner.parseTakeback("takeback x") == -1 && board.cli.Runner.parseTakeback("takebacks") == 0 &&
+			board.cli.Runner.parseTakeback("e4") == 0;
+	}
+	
+	private static boolean testPgnReader() {
+		String pgn = "[Event \"One\"]\n[White \"Doe, \\\"J\\\"\"]\n\n1. e4 e5 2. Nf3 {Petrov? (no)} Nc6 3. Bb5 a6 (3... Nf6 4. O-O $1 (4. d3)) 4. Ba4 $2 Nf6 5. O-O!? 1-0\n\n" +
+			"[FEN \"4k3/1P6/8/8/8/8/8/4K2R w K - 0 1\"]\n1. b8=Q+ Kd7 2. O-O *\n" +
+			"[Event \"Three\"]\n1. d4 d5 2. Ke3 Nf6 0-1";
+		final StringBuilder log = new StringBuilder();
+		try {
+			long games = new board.pgn.PgnReader(new java.io.ByteArrayInputStream(pgn.getBytes("UTF-8"))).readAll(new board.pgn.PgnAdapter() {
+				public void tag(String name,String value) {
+					log.append(name).append('=').append(value).append(' ');
+				}
+				public void illegalMove(BitboardPosition position,String move,MoveStatus status) {
+					log.append(move).append(' ').append(status).append(' ');
+				}
+				public void endGame(BitboardPosition position,String result) {
+					log.append(position.getUndoCount()).append(' ').append(result).append(position.isInCheck(position.isWhitesMove()) ? "+ " : " ");
+				}
+			});
+			return games == 3 && log.toString().equals("Event=One White=Doe, \"J\" 9 1-0 FEN=4k3/1P6/8/8/8/8/8/4K2R w K - 0 1 3 * Event=Three Ke3 ILLEGAL 2 0-1 ");
+		} catch (java.io.IOException e) {
+			return false;
+		}
+	}
+	
+	private static boolean testPgnImporter() {
+		StringBuilder pgn = new StringBuilder();
+		for(int i=0;i<50;i++) {
+			pgn.append("[Event \"").append(i).append("\"]\n\n1. e4 e5 2. Nf3 ").append(i % 10 == 0 ? "Ke6?? " : "Nc6 ").append("1/2-1/2\n\n");
+		}
+		board.pgn.PgnImporter importer = new board.pgn.PgnImporter(3, 2, 100, true);
+		final int[] wrong = new int[1];
+		try {
+			long games = importer.importGames(new java.io.ByteArrayInputStream(pgn.toString().getBytes("UTF-8")), new board.pgn.GameSink() {
+				public void accept(board.pgn.PgnGame game) {
+					boolean illegal = game.getNumber() % 10 == 0;
+					if (!game.getTag("Event").equals(String.valueOf(game.getNumber())) || game.isValid() == illegal ||
+						game.getPlyCount() != (illegal ? 3 : 4) || !game.getResult().equals("1/2-1/2")) wrong[0]++;
+				}
+			});
+			return games == 50 && wrong[0] == 0;
+		} catch (java.io.IOException e) {
+			return false;
+		} finally {
+			importer.shutdown();
+		}
+	}
+	
+	private static boolean testPgnWriter() {
+		Board b = new Board();
+		for(String move : new String[] { "e4", "e5", "Qh5", "Nc6", "Bc4", "Nf6", "Ne2", "Be7", "O-O", "O-O", "Qxf7+", "Rxf7", "Bxf7+", "Kh8", "Bg8", "Kxg8" }) {
+			if (b.tryMove(move).getStatus() != MoveStatus.OK) return false;
+		}
+		StringBuilder out = new StringBuilder();
+		try {
+			java.util.Map<String,String> tags = new java.util.LinkedHashMap<String,String>();
+			tags.put("White", "A \"B\" C");
+			tags.put("Annotator", "test");
+			new board.pgn.PgnWriter(out).write(b, tags);
+		} catch (java.io.IOException e) {
+			return false;
+		}
+		return out.toString().equals("[Event \"?\"]\n[Site \"?\"]\n[Date \"????.??.??\"]\n[Round \"?\"]\n[White \"A \\\"B\\\" C\"]\n" +
+			"[Black \"?\"]\n[Result \"*\"]\n[Annotator \"test\"]\n\n" +
+			"1. e4 e5 2. Qh5 Nc6 3. Bc4 Nf6 4. Ne2 Be7 5. O-O O-O 6. Qxf7+ Rxf7 7. Bxf7+ Kh8\n8. Bg8 Kxg8 *\n\n");
+	}
+	
+	private static boolean testGameDatabase() {
+		String pgn = "[White \"A\"]\n[WhiteElo \"2700\"]\n[Result \"1-0\"]\n\n1. e4 e5 2. Qh5 Nc6 3. Bc4 Nf6 4. Qxf7# 1-0\n\n" +
+			"[FEN \"4k3/1P6/8/8/8/8/8/4K2R w K - 0 1\"]\n\n1. b8=Q+ Kd7 2. O-O Ke6 3. Ke3 *\n";
+		board.pgn.PgnGameCollector collector = new board.pgn.PgnGameCollector();
+		java.io.File file = null;
+		try {
+			new board.pgn.PgnReader(new java.io.ByteArrayInputStream(pgn.getBytes("UTF-8"))).readAll(collector);
+			file = java.io.File.createTempFile("test", ".db");
+			board.db.GameDatabaseWriter writer = new board.db.GameDatabaseWriter(file);
+			for(board.pgn.PgnGame game : collector.getGames()) writer.add(game);
+			writer.close();
+			board.db.GameDatabase db = new board.db.GameDatabase(file);
+			try {
+				if (db.size() != 2) return false;
+				for(int i=0;i<2;i++) {
+					board.pgn.PgnGame expected = collector.getGames().get(i), game = db.getGame(i);
+					if (!game.getTags().equals(expected.getTags()) || !java.util.Arrays.equals(game.getMoves(), expected.getMoves()) ||
+						!game.getResult().equals(expected.getResult()) || game.getKey(game.getPlyCount()) != expected.getKey(expected.getPlyCount()) ||
+						game.getErrorStatus() != expected.getErrorStatus()) return false;
+				}
+				return db.getGame(1).getError().equals("Ke3");
+			} finally {
+				db.close();
+			}
+		} catch (java.io.IOException e) {
+			return false;
+		} finally {
+			if (file != null) file.delete();
+		}
+	}
+	
+	private static boolean testGameDatabaseDictionary() {
+		java.io.File file = null;
+		try {
+			file = java.io.File.createTempFile("test", ".db");
+			board.db.GameDatabaseWriter writer = new board.db.GameDatabaseWriter(file);
+			StringBuilder pgn = new StringBuilder();
+			for(int i=0;i<50;i++) {
+				pgn.append("[Site \"https://example.org/game/" + i + "\"]\n[White \"A\"]\n[Black \"B" + i % 2 + "\"]\n\n1. e4 *\n\n");
+			}
+			board.pgn.PgnGameCollector collector = new board.pgn.PgnGameCollector();
+			new board.pgn.PgnReader(new java.io.ByteArrayInputStream(pgn.toString().getBytes("UTF-8"))).readAll(collector);
+			for(board.pgn.PgnGame game : collector.getGames()) writer.add(game);
+			writer.close();
+			board.db.GameDatabase db = new board.db.GameDatabase(file);
+			try {
+				boolean ok = db.size() == 50;
+				for(int i=0;i<50;i++) ok &= db.getGame(i).getTags().equals(collector.getGames().get(i).getTags());
+				// the names and A, B0 and B1 but none of the sites, which are only seen once
+				return ok && db.getDictionarySize() == 6;
+			} finally {
+				db.close();
+			}
+		} catch (java.io.IOException e) {
+			return false;
+		} finally {
+			if (file != null) file.delete();
+		}
+	}
+	
+	private static boolean testPositionIndex() {
+		String pgn = "1. e4 e5 2. Nf3 Nc6 *\n\n1. Nf3 Nc6 2. e4 e5 *\n\n1. d4 d5 *\n";
+		board.pgn.PgnGameCollector collector = new board.pgn.PgnGameCollector();
+		java.io.File file = null;
+		try {
+			new board.pgn.PgnReader(new java.io.ByteArrayInputStream(pgn.getBytes("UTF-8"))).readAll(collector);
+			file = java.io.File.createTempFile("test", ".idx");
+			board.db.PositionIndexWriter writer = new board.db.PositionIndexWriter(file, 4);
+			for(int i=2;i>=0;i--) writer.add(i, collector.getGames().get(i));
+			writer.close();
+			board.db.PositionIndex index = new board.db.PositionIndex(file);
+			try {
+				long[] start = index.find(BitboardPosition.getStartingPosition());
+				long[] transposed = index.find(BitboardPosition.parseFromFen("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3"));
+				// a FEN without the en passant square still finds 1. e4
+				long[] e4 = index.find(BitboardPosition.parseFromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1"));
+				return index.size() == 13 && start.length == 3 && board.db.PositionIndex.game(start[2]) == 2 &&
+					transposed.length == 2 && board.db.PositionIndex.game(transposed[0]) == 0 && board.db.PositionIndex.game(transposed[1]) == 1 &&
+					board.db.PositionIndex.ply(transposed[1]) == 4 && e4.length == 1 && board.db.PositionIndex.ply(e4[0]) == 1;
+			} finally {
+				index.close();
+			}
+		} catch (java.io.IOException e) {
+			return false;
+		} finally {
+			if (file != null) file.delete();
+		}
+	}
+	
+	private static boolean testPositionIndexMerge() {
+		java.io.File file = null;
+		try {
+			file = java.io.File.createTempFile("test", ".idx");
+			// a run per entry: more runs than one merge takes, so the runs are merged in passes
+			board.db.PositionIndexWriter writer = new board.db.PositionIndexWriter(file, 1);
+			int entries = board.db.PositionIndexWriter.MAX_FAN_IN*3+5;
+			for(int i=entries-1;i>=0;i--) writer.add(i % 7, i, i % 11);
+			writer.close();
+			board.db.PositionIndex index = new board.db.PositionIndex(file);
+			try {
+				boolean ok = index.size() == entries;
+				for(int key=0;key<7;key++) {
+					long[] postings = index.find(key);
+					ok &= postings.length == (entries - key + 6) / 7;
+					for(int i=0;i<postings.length;i++) {
+						ok &= board.db.PositionIndex.game(postings[i]) == key + i*7 && board.db.PositionIndex.ply(postings[i]) == (key + i*7) % 11;
+					}
+				}
+				return ok;
+			} finally {
+				index.close();
+			}
+		} catch (java.io.IOException e) {
+			return false;
+		} finally {
+			if (file != null) file.delete();
+		}
+	}
 }